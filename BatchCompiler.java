@@ -0,0 +1,232 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import semant.*;
+import util.*;
+
+/**
+ * Compiles many independent programs in one JVM, e.g. a set of student
+ * submissions. The programs are listed in a manifest, one per line:
+ * <pre>
+ *   output-dir file.btm [file.btm ...]
+ * </pre>
+ * Blank lines and lines starting with '#' are ignored; relative paths are
+ * resolved against the manifest's directory. Every program is compiled on
+ * its own, with its own class registry, errors and output directory, so
+ * one program's errors never affect another; a bounded pool compiles
+ * several at once, and all of them share the JVM's warmed-up code and the
+ * built-in classes. The parser must therefore be usable from several
+ * threads at once.
+ */
+public class BatchCompiler {
+    /** Outcome of one program */
+    public static class Outcome {
+        /** "ok", "failed" (compile errors) or "error" (could not be read or written) */
+        private String status;
+        private Path outputDir;
+        private int errors;
+        private double millis;
+        private String message;
+
+        Outcome(String status, Path outputDir, int errors, double millis, String message) {
+            this.status = status;
+            this.outputDir = outputDir;
+            this.errors = errors;
+            this.millis = millis;
+            this.message = message;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public Path getOutputDir() {
+            return outputDir;
+        }
+
+        /** @return number of compile errors */
+        public int getErrors() {
+            return errors;
+        }
+
+        /** @return time taken to parse, compile and write the program, in ms */
+        public double getMillis() {
+            return millis;
+        }
+
+        /** @return first error, or null if there was none */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /** A program listed in the manifest */
+    private static class Entry {
+        Path outputDir;
+        String[] files;
+    }
+
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Front end used to parse the programs */
+    private ProgramParser parser;
+
+    /** Number of programs compiled at once */
+    private int jobs;
+
+    /** Compiles the programs, each one sequentially */
+    private CompilerSession session;
+
+    /**
+     * BatchCompiler constructor
+     *
+     * @param parser front end used to parse the programs
+     * @param jobs   number of programs compiled at once; 0 or less means one per processor
+     * @param debug  boolean indicating whether debugging is enabled
+     */
+    public BatchCompiler(ProgramParser parser, int jobs, boolean debug) {
+        this.parser = parser;
+        this.jobs = jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+        this.debug = debug;
+        this.session = new CompilerSession(debug, 1);
+    }
+
+    /**
+     * Get the session the programs are compiled with, e.g. to add libraries
+     *
+     * @return the session
+     */
+    public CompilerSession getSession() {
+        return session;
+    }
+
+    /**
+     * Compile the programs of a manifest and print a report
+     *
+     * @param manifest the manifest file
+     * @param report   where to print one line per program and a summary
+     * @return true if every program compiled
+     * @throws IOException if the manifest cannot be read
+     */
+    public boolean run(Path manifest, PrintStream report) throws IOException {
+        long start = System.nanoTime();
+        List<Outcome> outcomes = compile(readManifest(manifest));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int ok = 0;
+        int failed = 0;
+        for (Outcome outcome : outcomes) {
+            report.printf("%-6s %8.1f ms %4d errors  %s%s%n", outcome.getStatus(), outcome.getMillis(),
+                    outcome.getErrors(), outcome.getOutputDir(),
+                    outcome.getMessage() == null ? "" : "  " + outcome.getMessage());
+            if (outcome.getStatus().equals("ok")) {
+                ok++;
+            } else if (outcome.getStatus().equals("failed")) {
+                failed++;
+            }
+        }
+        report.printf("%d programs: %d ok, %d failed, %d errors; %.2f s, %.1f programs/s%n",
+                outcomes.size(), ok, failed, outcomes.size() - ok - failed, seconds,
+                outcomes.size() / Math.max(seconds, 1e-9));
+        return ok == outcomes.size();
+    }
+
+    /**
+     * Compile programs on the pool
+     *
+     * @return the outcomes, in manifest order
+     */
+    private List<Outcome> compile(List<Entry> entries) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, entries.size())));
+        try {
+            List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+            for (Entry entry : entries) {
+                futures.add(pool.submit(() -> compile(entry)));
+            }
+            List<Outcome> outcomes = new ArrayList<Outcome>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    outcomes.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // a compiler bug on one program must not take the batch down
+                    outcomes.add(new Outcome("error", entries.get(i).outputDir, 0, 0,
+                            String.valueOf(e.getCause())));
+                }
+            }
+            return outcomes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("batch interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Compile one program
+     */
+    private Outcome compile(Entry entry) {
+        long start = System.nanoTime();
+        CompilationResult result;
+        try {
+            result = session.compile(parser.parse(entry.files));
+        } catch (Exception e) {
+            return new Outcome("error", entry.outputDir, 0, (System.nanoTime() - start) / 1e6,
+                    e.toString());
+        }
+        List<DiagnosticSink.Diagnostic> diagnostics = result.getDiagnostics();
+        if (!result.isSuccess()) {
+            DiagnosticSink.Diagnostic first = diagnostics.get(0);
+            String message = first.getFilename() == null ? first.getMessage()
+                    : first.getFilename() + ":" + first.getLineNum() + ": " + first.getMessage();
+            return new Outcome("failed", entry.outputDir, diagnostics.size(),
+                    (System.nanoTime() - start) / 1e6, message);
+        }
+        try {
+            Files.createDirectories(entry.outputDir);
+            result.writeTo(entry.outputDir, false);
+        } catch (IOException e) {
+            return new Outcome("error", entry.outputDir, 0, (System.nanoTime() - start) / 1e6,
+                    e.toString());
+        }
+        if (debug) {
+            System.err.printf("batch: %s, %d classes%n", entry.outputDir, result.getClasses().size());
+        }
+        return new Outcome("ok", entry.outputDir, 0, (System.nanoTime() - start) / 1e6, null);
+    }
+
+    /**
+     * Read the programs listed in a manifest
+     */
+    private static List<Entry> readManifest(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Entry> entries = new ArrayList<Entry>();
+        int lineNum = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 2) {
+                throw new IOException(manifest + ":" + lineNum
+                        + ": expected an output directory and source files");
+            }
+            Entry entry = new Entry();
+            entry.outputDir = base.resolve(fields[0]);
+            entry.files = new String[fields.length - 1];
+            for (int i = 1; i < fields.length; i++) {
+                entry.files[i - 1] = base.resolve(fields[i]).toString();
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,153 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * On-disk record of which version of each class was last generated, so
+ * that unchanged classes are not generated and written again. A class is
+ * identified by a fingerprint of its type-checked AST together with the
+ * interfaces (member names and types) of every class it refers to and of
+ * all their ancestors: a class's code only changes if one of those does.
+ * The cache keeps one small ClassName.fp file per class in its directory.
+ */
+public class BuildCache {
+    /** Part of every fingerprint; change it whenever the generated code changes */
+    private static final String FORMAT = "bantam-jvm-4";
+
+    /** Directory the fingerprints are kept in */
+    private Path dir;
+
+    /** Number of classes found up to date */
+    private AtomicInteger hits = new AtomicInteger();
+
+    /** Number of classes that had to be generated */
+    private AtomicInteger misses = new AtomicInteger();
+
+    public BuildCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Fingerprint the given classes of an analyzed program
+     *
+     * @param classes classes to fingerprint
+     * @param classMap all classes of the program, by name
+     * @return fingerprint (hex) by class name
+     */
+    public Map<String, String> fingerprint(List<Class_> classes, Map<String, ClassTreeNode> classMap) {
+        Map<String, byte[]> interfaces = new HashMap<String, byte[]>();
+        Map<String, String> fingerprints = new HashMap<String, String>();
+        for (Class_ clazz : classes) {
+            MessageDigest digest = newDigest();
+            digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+            FingerprintVisitor visitor = new FingerprintVisitor(digest);
+            clazz.accept(visitor);
+
+            // the referenced classes and all their ancestors, in name order
+            Set<String> dependencies = new TreeSet<String>();
+            List<String> work = new ArrayList<String>(visitor.getReferencedClasses());
+            work.add(clazz.getName());
+            while (!work.isEmpty()) {
+                ClassTreeNode ctn = classMap.get(work.remove(work.size() - 1));
+                if (ctn != null && dependencies.add(ctn.getName()) && ctn.getParent() != null) {
+                    work.add(ctn.getParent().getName());
+                }
+            }
+            for (String name : dependencies) {
+                digest.update(interfaces.computeIfAbsent(name,
+                        n -> interfaceHash(classMap.get(n))));
+            }
+            fingerprints.put(clazz.getName(), toHex(digest.digest()));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Check whether a class was last generated with the same fingerprint
+     * and its output is still there; counts a hit or a miss
+     *
+     * @param className   name of the class
+     * @param fingerprint its current fingerprint
+     * @param outputFile  the class's .j file
+     * @return true if the class does not need to be generated
+     */
+    public boolean isUpToDate(String className, String fingerprint, Path outputFile) {
+        boolean upToDate = false;
+        Path file = dir.resolve(className + ".fp");
+        if (Files.exists(outputFile) && Files.exists(file)) {
+            try {
+                upToDate = fingerprint.equals(Files.readString(file, StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                // treat an unreadable entry as missing
+            }
+        }
+        (upToDate ? hits : misses).incrementAndGet();
+        return upToDate;
+    }
+
+    /**
+     * Remember the fingerprint a class was generated with; only call this
+     * once the class's .j file has been written
+     *
+     * @param className   name of the class
+     * @param fingerprint its fingerprint
+     * @throws IOException if the entry cannot be written
+     */
+    public void record(String className, String fingerprint) throws IOException {
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve(className + ".fp"), fingerprint, StandardCharsets.US_ASCII);
+    }
+
+    /** @return number of classes found up to date so far */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /** @return number of classes that had to be generated so far */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public String toString() {
+        return String.format("build cache: %d hits, %d misses", getHits(), getMisses());
+    }
+
+    /**
+     * Hash the interface of a class
+     */
+    private static byte[] interfaceHash(ClassTreeNode ctn) {
+        MessageDigest digest = newDigest();
+        try (DataOutputStream out = new DataOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            ClassSummary.of(ctn).writeInterface(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen, nothing is written out
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
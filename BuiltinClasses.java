@@ -0,0 +1,162 @@
+package semant;
+
+import ast.*;
+import util.*;
+import java.util.*;
+
+/** The built-in classes Object, String, TextIO and Sys. Their ASTs and
+  * method tables are built once per JVM, the first time any analyzer
+  * needs them, and are never modified afterwards, so every compilation in
+  * the JVM (including ones running side by side in a daemon or a batch)
+  * shares them. Each compilation only makes its own class tree nodes for
+  * them, since those also hold the links to the program's classes, and
+  * fills their symbol tables from the precomputed method tables instead of
+  * running <tt>ClassEnvVisitor</tt> over the ASTs again.
+  * */
+public final class BuiltinClasses {
+    /** A built-in class */
+    private static final class Definition {
+        final Class_ astNode;
+        final boolean extendable;
+        /** the accepted methods, in declaration order */
+        final Map<String, Method> methods;
+        /** the method table, entries and signatures included */
+        final MethodTable methodTable;
+
+        Definition(Class_ astNode, boolean extendable, Definition parent) {
+            this.astNode = astNode;
+            this.extendable = extendable;
+            Map<String, Method> methods = new LinkedHashMap<String, Method>();
+            for (Iterator it = astNode.getMemberList().getIterator(); it.hasNext();) {
+                Method method = (Method) it.next();
+                methods.put(method.getName(), method);
+            }
+            this.methods = Collections.unmodifiableMap(methods);
+            this.methodTable = MethodTable.derive(parent == null ? null : parent.methodTable,
+                    astNode.getName(), methods.values());
+        }
+    }
+
+    /** Definitions by class name, Object first */
+    private static final Map<String, Definition> DEFINITIONS = define();
+
+    private BuiltinClasses() {
+    }
+
+    /** Check whether a class is built in
+      * @param name name of the class
+      * @return true for Object, String, TextIO and Sys
+      * */
+    public static boolean contains(String name) {
+        return name != null && DEFINITIONS.containsKey(name);
+    }
+
+    /** Get the names of the built-in classes
+      * @return the names, Object first
+      * */
+    public static Set<String> getNames() {
+        return DEFINITIONS.keySet();
+    }
+
+    /** Get the shared AST of a built-in class (it must not be modified)
+      * @param name name of the class
+      * @return the AST, or null if the class is not built in
+      * */
+    public static Class_ getASTNode(String name) {
+        Definition definition = DEFINITIONS.get(name);
+        return definition == null ? null : definition.astNode;
+    }
+
+    /** Get the shared method table of a built-in class
+      * @param name name of the class
+      * @return the table, or null if the class is not built in
+      * */
+    static MethodTable getMethodTable(String name) {
+        Definition definition = DEFINITIONS.get(name);
+        return definition == null ? null : definition.methodTable;
+    }
+
+    /** Make a class tree node for a built-in class in one compilation's
+      * class map (parent links and symbol tables are left to the caller)
+      * @param name name of the class
+      * @param classMap class map of the compilation
+      * @return the node
+      * */
+    static ClassTreeNode newNode(String name, Hashtable<String, ClassTreeNode> classMap) {
+        Definition definition = DEFINITIONS.get(name);
+        return new ClassTreeNode(definition.astNode, /*built-in?*/true, definition.extendable, classMap);
+    }
+
+    /** Fill the symbol tables of a built-in class from its method table,
+      * making the entries <tt>ClassEnvVisitor</tt> would make
+      * @param ctn class tree node of the class (its parent must be set)
+      * */
+    static void enterMembers(ClassTreeNode ctn) {
+        ctn.getVarSymbolTable().enterScope();
+        var methodSymbolTable = ctn.getMethodSymbolTable();
+        methodSymbolTable.enterScope();
+        for (Method method : DEFINITIONS.get(ctn.getName()).methods.values()) {
+            methodSymbolTable.add(method.getName(), method);
+        }
+    }
+
+    private static Map<String, Definition> define() {
+        Map<String, Definition> definitions = new LinkedHashMap<String, Definition>();
+
+        Definition object = new Definition(
+                builtin("Object", null, method("Object", "clone")), /*extendable?*/true, null);
+        definitions.put("Object", object);
+
+        // note: String, TextIO, and Sys all have fields that are not shown below.  Because
+        // these classes cannot be extended and fields are protected, they cannot be accessed by
+        // other classes, so they do not have to be included in the AST.
+        definitions.put("String", new Definition(
+                builtin("String", "Object",
+                        method("int", "length"),
+                        method("boolean", "equals", "Object", "str"),
+                        method("String", "substring", "int", "beginIndex", "int", "endIndex"),
+                        method("String", "concat", "String", "str")),
+                /*extendable?*/false, object));
+
+        definitions.put("TextIO", new Definition(
+                builtin("TextIO", "Object",
+                        method("void", "readStdin"),
+                        method("void", "readFile", "String", "readFile"),
+                        method("void", "writeStdout"),
+                        method("void", "writeStderr"),
+                        method("void", "writeFile", "String", "writeFile"),
+                        method("String", "getString"),
+                        method("int", "getInt"),
+                        method("TextIO", "putString", "String", "str"),
+                        method("TextIO", "putInt", "int", "n")),
+                /*extendable?*/false, object));
+
+        /* MC: Adding time() requires modifying Spim, which I don't want to do yet
+           (although I do have this working with Spim in a branched version). */
+        definitions.put("Sys", new Definition(
+                builtin("Sys", "Object", method("void", "exit", "int", "status")),
+                /*extendable?*/false, object));
+
+        return Collections.unmodifiableMap(definitions);
+    }
+
+    private static Class_ builtin(String name, String parent, Method... methods) {
+        MemberList members = new MemberList(-1);
+        for (Method method : methods) {
+            members.addElement(method);
+        }
+        return new Class_(-1, "<built-in class>", name, parent, members);
+    }
+
+    /** Make a method with an empty body
+      * @param formals type and name of each formal, in turn
+      * */
+    private static Method method(String returnType, String name, String... formals) {
+        FormalList formalList = new FormalList(-1);
+        for (int i = 0; i < formals.length; i += 2) {
+            formalList.addElement(new Formal(-1, formals[i], formals[i + 1]));
+        }
+        return new Method(-1, returnType, name, formalList,
+                (StmtList) (new StmtList(-1)).addElement(new ReturnStmt(-1, null)));
+    }
+}
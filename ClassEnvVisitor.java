@@ -7,27 +7,21 @@ import java.util.*;
 /** Visitor class for building the symbol tables */
 public class ClassEnvVisitor extends SemanticVisitor {
 
-    /**
-     * Maximum number of inherited and non-inherited fields that can
-     * be defined for any one class
-     */
-    private final int MAX_NUM_FIELDS = 1500;
-
-    private Hashtable<String, ClassTreeNode> classMap;
+    private ClassRegistry classMap;
 
     private SymbolTable varSymbolTable;
 
     private SymbolTable methodSymbolTable;
 
     /** Object for error handling */
-    private ErrorHandler errorHandler;
+    private DiagnosticSink errorHandler;
 
     private String fileName;
 
     private String className;
 
-    public ClassEnvVisitor(ErrorHandler errorHandler,
-            Hashtable<String, ClassTreeNode> classMap) {
+    public ClassEnvVisitor(DiagnosticSink errorHandler,
+            ClassRegistry classMap) {
         this.errorHandler = errorHandler;
         this.classMap = classMap;
 
@@ -74,27 +68,27 @@ public class ClassEnvVisitor extends SemanticVisitor {
         switch (node.getName()) {
             case "null":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("fields cannot be named 'null'"));
+                        "fields cannot be named 'null'");
                 validField = false;
                 break;
 
             case "this":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("fields cannot be named 'this'"));
+                        "fields cannot be named 'this'");
                 validField = false;
                 break;
 
             case "super":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("fields cannot be named 'super'"));
+                        "fields cannot be named 'super'");
                 validField = false;
                 break;
         }
 
         if (varSymbolTable.peek(node.getName()) != null) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("field '%s' is already defined in class '%s'",
-                            node.getName(), className));
+                    "field '%s' is already defined in class '%s'",
+                    node.getName(), className);
             validField = false;
         }
 
@@ -103,13 +97,12 @@ public class ClassEnvVisitor extends SemanticVisitor {
                 classMap.get(node.getType()) != null)) {
 
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("type '%s' of field '%s' is undefined",
-                            node.getType(), node.getName()));
+                    "type '%s' of field '%s' is undefined",
+                    node.getType(), node.getName());
             validField = false;
         }
         if (validField) {
             varSymbolTable.add(node.getName(), node.getType());
-            varSymbolTable.add("this."+node.getName(), node.getType());
             // System.out.println(node.getLineNum()+" "+varSymbolTable);
         }
         return null;
@@ -131,34 +124,34 @@ public class ClassEnvVisitor extends SemanticVisitor {
                 classMap.get(node.getReturnType()) != null)) {
 
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("return type '%s' of method '%s' is undefined",
-                            node.getReturnType(), node.getName()));
+                    "return type '%s' of method '%s' is undefined",
+                    node.getReturnType(), node.getName());
             validMethod = false;
         }
         switch (node.getName()) {
             case "null":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("methods cannot be named 'null'"));
+                        "methods cannot be named 'null'");
                 validMethod = false;
                 break;
 
             case "this":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("methods cannot be named 'this'"));
+                        "methods cannot be named 'this'");
                 validMethod = false;
                 break;
 
             case "super":
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("methods cannot be named 'super'"));
+                        "methods cannot be named 'super'");
                 validMethod = false;
                 break;
         }
 
         if (methodSymbolTable.peek(node.getName()) != null) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("method '%s' is already defined in class '%s'",
-                            node.getName(), className));
+                    "method '%s' is already defined in class '%s'",
+                    node.getName(), className);
             validMethod = false;
         }
         var stmtIter = node.getStmtList().getIterator();
@@ -170,10 +163,9 @@ public class ClassEnvVisitor extends SemanticVisitor {
                     if (returnStmt.getExpr() == null && !node.getReturnType().equals("void")
                             && !node.getName().equals("main") && !validMethod) {
                         errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "declared return type of method '%s' is '%s' but method body"
-                                                + " is not returning any expression",
-                                        node.getName(), node.getReturnType()));
+                                "declared return type of method '%s' is '%s' but method body"
+                                        + " is not returning any expression",
+                                node.getName(), node.getReturnType());
                     }
                 }
             }
@@ -188,20 +180,18 @@ public class ClassEnvVisitor extends SemanticVisitor {
                 var inheritedNode = (Method) methodSymbolTable.lookup(node.getName());
                 if (!(inheritedNode).getReturnType().equals(node.getReturnType())) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "overriding method '%s' has return type '%s', which differs"
-                                            + " from the inherited method's return type '%s'",
-                                    node.getName(), node.getReturnType(),
-                                    inheritedNode.getReturnType()));
+                            "overriding method '%s' has return type '%s', which differs"
+                                    + " from the inherited method's return type '%s'",
+                            node.getName(), node.getReturnType(),
+                            inheritedNode.getReturnType());
                     validMethod = false;
 
                 } else if (node.getFormalList().getSize() != inheritedNode.getFormalList().getSize()) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "overriding method '%s' has %d formals, which differs from"
-                                            + " the inherited method (%d)",
-                                    node.getName(), node.getFormalList().getSize(),
-                                    inheritedNode.getFormalList().getSize()));
+                            "overriding method '%s' has %d formals, which differs from"
+                                    + " the inherited method (%d)",
+                            node.getName(), node.getFormalList().getSize(),
+                            inheritedNode.getFormalList().getSize());
                     validMethod = false;
                 } else {
                     var iter = node.getFormalList().getIterator();
@@ -212,12 +202,11 @@ public class ClassEnvVisitor extends SemanticVisitor {
                         var superCurr = (Formal) iterr.next();
                         if (!curr.getType().equals(superCurr.getType())) {
                             errorHandler.register(2, fileName, node.getLineNum(),
-                                    String.format(
-                                            "overriding method '%s' has formal type '%s' for"
-                                                    + " formal %d, which differs from the inherited"
-                                                    + " method's formal type '%s'",
-                                            node.getName(), curr.getType(), counter,
-                                            superCurr.getType()));
+                                    "overriding method '%s' has formal type '%s' for"
+                                            + " formal %d, which differs from the inherited"
+                                            + " method's formal type '%s'",
+                                    node.getName(), curr.getType(), counter,
+                                    superCurr.getType());
                             counter++;
                             validMethod = false;
                         }
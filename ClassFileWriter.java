@@ -0,0 +1,215 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes generated .j files on a background thread so that code generation
+ * never waits for the disk. Finished classes are handed over through a
+ * bounded queue (submit() blocks when the writer falls behind), drained in
+ * batches and written through file channels from one large direct buffer.
+ * With the fsync policy every file is forced to disk once, at close().
+ */
+public class ClassFileWriter implements Closeable {
+    /** Size of the direct buffer files are written from */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Default number of classes that may wait in the queue */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /** Queue entry that tells the writer thread to stop */
+    private static final Entry END = new Entry(null, null);
+
+    /** A class waiting to be written */
+    private static class Entry {
+        String fileName;
+        CharSequence source;
+
+        Entry(String fileName, CharSequence source) {
+            this.fileName = fileName;
+            this.source = source;
+        }
+    }
+
+    /** Directory the files are written to */
+    private Path outputDir;
+
+    /** Whether files are forced to disk at close() */
+    private boolean fsync;
+
+    /** Classes waiting to be written */
+    private BlockingQueue<Entry> queue;
+
+    /** Files written so far (only kept for fsync) */
+    private List<Path> written = new ArrayList<Path>();
+
+    /** First error hit by the writer thread */
+    private volatile IOException failure;
+
+    /** The writer thread, started with the first file */
+    private Thread thread;
+
+    /** Set once close() has been called (read by the submitting threads) */
+    private volatile boolean closed = false;
+
+    public ClassFileWriter(Path outputDir) {
+        this(outputDir, DEFAULT_QUEUE_CAPACITY, false);
+    }
+
+    /**
+     * ClassFileWriter constructor. The writer thread (and its buffer) is
+     * only set up once the first class is submitted, so a compile that
+     * writes nothing does not pay for it.
+     *
+     * @param outputDir     directory to write the .j files to
+     * @param queueCapacity number of classes that may be waiting to be written
+     * @param fsync         whether to force all files to disk at close()
+     */
+    public ClassFileWriter(Path outputDir, int queueCapacity, boolean fsync) {
+        this.outputDir = outputDir;
+        this.fsync = fsync;
+        this.queue = new ArrayBlockingQueue<Entry>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * Queue the code of a class to be written to ClassName.j
+     *
+     * @param className name of the class
+     * @param source    generated code
+     */
+    public void submit(String className, CharSequence source) {
+        if (closed) {
+            throw new IllegalStateException("writer is closed");
+        }
+        start();
+        try {
+            queue.put(new Entry(className + ".j", source));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Start the writer thread unless it is running (classes may be
+     * submitted from several threads)
+     */
+    private synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::writeLoop, "class-file-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Wait for all queued classes to be written (and synced, if requested)
+     *
+     * @throws IOException if any file could not be written
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (this) {
+            if (thread == null) {
+                return; // nothing was submitted
+            }
+        }
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (failure == null && fsync) {
+            for (Path path : written) {
+                try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Body of the writer thread
+     */
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        List<Entry> batch = new ArrayList<Entry>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Entry entry : batch) {
+                if (entry == END) {
+                    return;
+                }
+                if (failure != null) {
+                    continue; // keep draining so submit() never blocks forever
+                }
+                try {
+                    write(entry, buffer, encoder);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    // e.g. InvalidPathException; the thread must live on to drain the queue
+                    failure = new IOException("cannot write " + entry.fileName, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write one file
+     */
+    private void write(Entry entry, ByteBuffer buffer, CharsetEncoder encoder) throws IOException {
+        Path path = outputDir.resolve(entry.fileName);
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CharBuffer chars = CharBuffer.wrap(entry.source);
+            encoder.reset();
+            buffer.clear();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, buffer, true);
+                drain(buffer, channel);
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(buffer);
+                drain(buffer, channel);
+            } while (result.isOverflow());
+        }
+        if (fsync) {
+            written.add(path);
+        }
+    }
+
+    /**
+     * Write out and empty the buffer
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package semant;
+
+import util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/** A file of class interface summaries, the Bantam counterpart of a set of
+  * header files: written after compiling a set of classes, it lets other
+  * programs be compiled against those classes (see
+  * <tt>SemanticAnalyzer.addLibrary()</tt>) without parsing or checking
+  * their source again.
+  * */
+public class ClassLibrary {
+    /** Marks a file as a class library ("BJLB") */
+    private static final int MAGIC = 0x424a4c42;
+
+    /** Format version, changed whenever the summary format changes */
+    private static final int VERSION = 1;
+
+    private ClassLibrary() {
+    }
+
+    /** Summarize the classes of an analyzed program. The built-in classes
+      * are left out, but the classes of other libraries it was compiled
+      * against are kept, so a library built on another one still carries
+      * the classes it depends on
+      * @param registry classes of the program
+      * @return summaries, parents before children
+      * */
+    public static List<ClassSummary> summarize(ClassRegistry registry) {
+        List<ClassSummary> summaries = new ArrayList<ClassSummary>();
+        for (ClassTreeNode ctn : registry.getClasses()) {
+            if (!BuiltinClasses.contains(ctn.getName())) {
+                summaries.add(ClassSummary.of(ctn));
+            }
+        }
+        return summaries;
+    }
+
+    /** Write a library file
+      * @param file the file
+      * @param summaries summaries of the library's classes
+      * @throws IOException if the file cannot be written
+      * */
+    public static void write(Path file, Collection<ClassSummary> summaries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(summaries.size());
+            for (ClassSummary summary : summaries) {
+                summary.write(out);
+            }
+        }
+    }
+
+    /** Read a library file
+      * @param file the file
+      * @return summaries of the library's classes
+      * @throws IOException if the file cannot be read or is not a library
+      * */
+    public static List<ClassSummary> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Bantam class library");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has library format " + version
+                        + ", expected " + VERSION);
+            }
+            int n = in.readInt();
+            List<ClassSummary> summaries = new ArrayList<ClassSummary>(n);
+            for (int i = 0; i < n; i++) {
+                summaries.add(ClassSummary.read(in));
+            }
+            return summaries;
+        }
+    }
+}
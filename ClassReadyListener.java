@@ -0,0 +1,15 @@
+package semant;
+
+import util.*;
+
+/** Receives user-defined classes as soon as they can be handed to code
+  * generation, i.e. once the class and all of its user-defined ancestors
+  * have been type checked without errors. Called from the analysis
+  * threads, so implementations must be thread-safe and should not block.
+  * */
+public interface ClassReadyListener {
+    /** A class has been type checked without errors
+      * @param ctn class tree node of the class
+      * */
+    void classReady(ClassTreeNode ctn);
+}
@@ -0,0 +1,204 @@
+package semant;
+
+import util.*;
+import java.util.*;
+
+/** Read-only snapshot of the classes of a program. The class map is built
+  * up (and checked) in <tt>SemanticAnalyzer.buildClassTree()</tt> and then
+  * frozen into a registry; from then on all lookups go through the
+  * registry, which is never modified and so can be read from any number
+  * of threads without synchronization. Every class gets a dense integer
+  * id, so later phases can keep per-class data in arrays. The class tree
+  * is also numbered in pre-order and post-order, so that whether one class
+  * is a subclass of another takes two comparisons.
+  * */
+public final class ClassRegistry {
+    /** Class ids by name */
+    private final Map<String, Integer> ids;
+
+    /** Class tree nodes by id */
+    private final ClassTreeNode[] nodes;
+
+    /** Class ids by (canonical) class type */
+    private final Map<Type, Integer> typeIds;
+
+    /** Pre-order and post-order number of each class in the class tree, by
+      * id (-1 for classes not in the tree) */
+    private final int[] preOrder;
+    private final int[] postOrder;
+
+    private ClassRegistry(Map<String, Integer> ids, ClassTreeNode[] nodes) {
+        this.ids = ids;
+        this.nodes = nodes;
+        this.preOrder = new int[nodes.length];
+        this.postOrder = new int[nodes.length];
+        number();
+        Map<Type, Integer> typeIds = new IdentityHashMap<Type, Integer>(nodes.length * 2);
+        for (int id = 0; id < nodes.length; id++) {
+            typeIds.put(Type.of(nodes[id].getName()), id);
+        }
+        this.typeIds = typeIds;
+    }
+
+    /** Freeze a class map into a registry. Ids are given out in the order
+      * of the class list (breadth first over the class tree, so a parent
+      * always has a smaller id than its children), then to any classes
+      * not in the tree (only possible in erroneous programs) by name.
+      * @param classMap map from class names to class tree nodes
+      * @param orderedClassList classes of the class tree, breadth first
+      * @return the registry
+      * */
+    public static ClassRegistry freeze(Map<String, ClassTreeNode> classMap,
+            List<ClassTreeNode> orderedClassList) {
+        List<ClassTreeNode> order = new ArrayList<ClassTreeNode>(orderedClassList);
+        Set<String> inTree = new HashSet<String>();
+        for (ClassTreeNode ctn : orderedClassList) {
+            inTree.add(ctn.getName());
+        }
+        List<String> rest = new ArrayList<String>();
+        for (String name : classMap.keySet()) {
+            if (!inTree.contains(name)) {
+                rest.add(name);
+            }
+        }
+        Collections.sort(rest);
+        for (String name : rest) {
+            order.add(classMap.get(name));
+        }
+
+        Map<String, Integer> ids = new HashMap<String, Integer>(order.size() * 2);
+        ClassTreeNode[] nodes = new ClassTreeNode[order.size()];
+        for (int id = 0; id < nodes.length; id++) {
+            nodes[id] = order.get(id);
+            ids.put(nodes[id].getName(), id);
+        }
+        return new ClassRegistry(Collections.unmodifiableMap(ids), nodes);
+    }
+
+    /** Number the class tree depth first from its root (the first class),
+      * without recursion since generated hierarchies can be deep
+      * */
+    private void number() {
+        Arrays.fill(preOrder, -1);
+        Arrays.fill(postOrder, -1);
+        if (nodes.length == 0) {
+            return;
+        }
+        int pre = 0;
+        int post = 0;
+        Deque<ClassTreeNode> path = new ArrayDeque<ClassTreeNode>();
+        Deque<Iterator<ClassTreeNode>> children = new ArrayDeque<Iterator<ClassTreeNode>>();
+        preOrder[0] = pre++;
+        path.push(nodes[0]);
+        children.push(nodes[0].getChildrenList());
+        while (!path.isEmpty()) {
+            if (children.peek().hasNext()) {
+                ClassTreeNode child = children.peek().next();
+                int id = getId(child.getName());
+                if (id < 0 || nodes[id] != child || preOrder[id] >= 0) {
+                    continue; // not a class of this registry
+                }
+                preOrder[id] = pre++;
+                path.push(child);
+                children.push(child.getChildrenList());
+            } else {
+                children.pop();
+                postOrder[getId(path.pop().getName())] = post++;
+            }
+        }
+    }
+
+    /** Look up a class by name
+      * @param name name of the class (may be null)
+      * @return class tree node of the class, or null if there is no such class
+      * */
+    public ClassTreeNode get(String name) {
+        if (name == null) {
+            return null;
+        }
+        Integer id = ids.get(name);
+        return id == null ? null : nodes[id];
+    }
+
+    /** Look up a class by id
+      * @param id id of the class
+      * @return class tree node of the class
+      * */
+    public ClassTreeNode get(int id) {
+        return nodes[id];
+    }
+
+    /** Check whether a class exists
+      * @param name name of the class
+      * @return true if there is a class with this name
+      * */
+    public boolean contains(String name) {
+        return name != null && ids.containsKey(name);
+    }
+
+    /** Get the id of a class
+      * @param name name of the class
+      * @return id of the class, or -1 if there is no such class
+      * */
+    public int getId(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /** Get the id of a class type
+      * @param type the type (may be null)
+      * @return id of the class, or -1 if the type is not a class of this program
+      * */
+    public int getId(Type type) {
+        Integer id = type == null ? null : typeIds.get(type);
+        return id == null ? -1 : id;
+    }
+
+    /** Get the type of a class
+      * @param id id of the class
+      * @return the canonical class type
+      * */
+    public Type getType(int id) {
+        return Type.of(nodes[id].getName());
+    }
+
+    /** Check whether one class is the same as or a subclass of another
+      * @param sub id of the first class
+      * @param sup id of the second class
+      * @return true if the first class is a descendant of the second, or the
+      *         same class; false if either is not in the class tree
+      * */
+    public boolean isSubclass(int sub, int sup) {
+        return preOrder[sup] >= 0 && preOrder[sup] <= preOrder[sub] && postOrder[sub] <= postOrder[sup];
+    }
+
+    /** Check whether a value of one type can be used where another is expected:
+      * the types are the same, or both are classes and the first is a
+      * subclass of the second
+      * @param sub the first type
+      * @param sup the second type
+      * @return true if sub is a subtype of sup
+      * */
+    public boolean isSubtype(Type sub, Type sup) {
+        if (sub == sup) {
+            return true;
+        }
+        int subId = getId(sub);
+        int supId = getId(sup);
+        return subId >= 0 && supId >= 0 && isSubclass(subId, supId);
+    }
+
+    /** Get the number of classes (ids run from 0 to size() - 1)
+      * @return number of classes
+      * */
+    public int size() {
+        return nodes.length;
+    }
+
+    /** Get all classes in id order
+      * @return unmodifiable list of the class tree nodes
+      * */
+    public List<ClassTreeNode> getClasses() {
+        return Collections.unmodifiableList(Arrays.asList(nodes));
+    }
+}
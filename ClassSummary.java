@@ -0,0 +1,282 @@
+package semant;
+
+import ast.*;
+import util.*;
+import java.io.*;
+import java.util.*;
+
+/** The member signatures of one class as entered into its environment by
+  * <tt>ClassEnvVisitor</tt>: the fields and methods that were accepted,
+  * with their types, but none of the method bodies. A summary can be
+  * written out and read back, and turned into a class AST with stub
+  * method bodies (like the ASTs of the built-in classes), which is all
+  * that is needed to type check code that uses the class.
+  * */
+public class ClassSummary {
+    /** Signature of a field */
+    public static class FieldSignature {
+        private String name;
+        private String type;
+        private int lineNum;
+
+        public FieldSignature(String name, String type, int lineNum) {
+            this.name = name;
+            this.type = type;
+            this.lineNum = lineNum;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getLineNum() {
+            return lineNum;
+        }
+    }
+
+    /** Signature of a method */
+    public static class MethodSignature {
+        private String name;
+        private String returnType;
+        private int lineNum;
+        private List<String> formalTypes = new ArrayList<String>();
+        private List<String> formalNames = new ArrayList<String>();
+
+        public MethodSignature(String name, String returnType, int lineNum) {
+            this.name = name;
+            this.returnType = returnType;
+            this.lineNum = lineNum;
+        }
+
+        public void addFormal(String type, String name) {
+            formalTypes.add(type);
+            formalNames.add(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getReturnType() {
+            return returnType;
+        }
+
+        public int getLineNum() {
+            return lineNum;
+        }
+
+        public List<String> getFormalTypes() {
+            return formalTypes;
+        }
+
+        public List<String> getFormalNames() {
+            return formalNames;
+        }
+    }
+
+    private String name;
+    private String parent;
+    private String filename;
+    private int lineNum;
+    private boolean builtIn;
+    private boolean extendable;
+    private List<FieldSignature> fields = new ArrayList<FieldSignature>();
+    private List<MethodSignature> methods = new ArrayList<MethodSignature>();
+
+    public ClassSummary(String name, String parent, String filename, int lineNum,
+            boolean builtIn, boolean extendable) {
+        this.name = name;
+        this.parent = parent;
+        this.filename = filename;
+        this.lineNum = lineNum;
+        this.builtIn = builtIn;
+        this.extendable = extendable;
+    }
+
+    /** Summarize a class whose environment has been built
+      * @param ctn class tree node of the class
+      * @return summary of the members accepted into the class's symbol tables
+      * */
+    public static ClassSummary of(ClassTreeNode ctn) {
+        Class_ ast = ctn.getASTNode();
+        var parentCTN = ctn.getParent();
+        ClassSummary summary = new ClassSummary(ctn.getName(),
+                parentCTN == null ? null : parentCTN.getName(),
+                ast.getFilename(), ast.getLineNum(), ctn.isBuiltIn(), ctn.isExtendable());
+        var vars = ctn.getVarSymbolTable();
+        var methods = ctn.getMethodSymbolTable();
+        Set<String> fieldNames = new HashSet<String>();
+        for (Iterator it = ast.getMemberList().getIterator(); it.hasNext();) {
+            var member = it.next();
+            if (member instanceof Field) {
+                var field = (Field) member;
+                // a rejected duplicate has the same name but is not the entry in the table
+                if (field.getType().equals(vars.peek(field.getName()))
+                        && fieldNames.add(field.getName())) {
+                    summary.fields.add(new FieldSignature(field.getName(), field.getType(),
+                            field.getLineNum()));
+                }
+            } else if (member instanceof Method && methods.peek(((Method) member).getName()) == member) {
+                var method = (Method) member;
+                var sig = new MethodSignature(method.getName(), method.getReturnType(),
+                        method.getLineNum());
+                for (Iterator fit = method.getFormalList().getIterator(); fit.hasNext();) {
+                    var formal = (Formal) fit.next();
+                    sig.addFormal(formal.getType(), formal.getName());
+                }
+                summary.methods.add(sig);
+            }
+        }
+        return summary;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** @return name of the parent class, or null for Object */
+    public String getParent() {
+        return parent;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getLineNum() {
+        return lineNum;
+    }
+
+    public boolean isBuiltIn() {
+        return builtIn;
+    }
+
+    public boolean isExtendable() {
+        return extendable;
+    }
+
+    public List<FieldSignature> getFields() {
+        return fields;
+    }
+
+    public List<MethodSignature> getMethods() {
+        return methods;
+    }
+
+    /** Build a class AST holding just the summarized members; methods get
+      * a stub body, the same way the built-in classes are defined
+      * @return the class AST
+      * */
+    public Class_ toClass_() {
+        MemberList members = new MemberList(lineNum);
+        for (FieldSignature field : fields) {
+            members.addElement(new Field(field.getLineNum(), field.getType(), field.getName(), null));
+        }
+        for (MethodSignature method : methods) {
+            FormalList formals = new FormalList(method.getLineNum());
+            for (int i = 0; i < method.getFormalTypes().size(); i++) {
+                formals.addElement(new Formal(method.getLineNum(), method.getFormalTypes().get(i),
+                        method.getFormalNames().get(i)));
+            }
+            members.addElement(new Method(method.getLineNum(), method.getReturnType(),
+                    method.getName(), formals,
+                    (StmtList) (new StmtList(method.getLineNum()))
+                            .addElement(new ReturnStmt(method.getLineNum(), null))));
+        }
+        return new Class_(lineNum, filename, name, parent, members);
+    }
+
+    /** Write the summary
+      * @param out where to write it
+      * @throws IOException if writing fails
+      * */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        writeNullable(out, parent);
+        out.writeUTF(filename);
+        out.writeInt(lineNum);
+        out.writeBoolean(builtIn);
+        out.writeBoolean(extendable);
+        out.writeInt(fields.size());
+        for (FieldSignature field : fields) {
+            out.writeUTF(field.getName());
+            out.writeUTF(field.getType());
+            out.writeInt(field.getLineNum());
+        }
+        out.writeInt(methods.size());
+        for (MethodSignature method : methods) {
+            out.writeUTF(method.getName());
+            out.writeUTF(method.getReturnType());
+            out.writeInt(method.getLineNum());
+            out.writeInt(method.getFormalTypes().size());
+            for (int i = 0; i < method.getFormalTypes().size(); i++) {
+                out.writeUTF(method.getFormalTypes().get(i));
+                out.writeUTF(method.getFormalNames().get(i));
+            }
+        }
+    }
+
+    /** Write just what other classes can depend on: the names and types of
+      * the members, without line numbers, file name or formal names, so
+      * that it only changes when the class's interface changes
+      * @param out where to write it
+      * @throws IOException if writing fails
+      * */
+    public void writeInterface(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        writeNullable(out, parent);
+        out.writeInt(fields.size());
+        for (FieldSignature field : fields) {
+            out.writeUTF(field.getName());
+            out.writeUTF(field.getType());
+        }
+        out.writeInt(methods.size());
+        for (MethodSignature method : methods) {
+            out.writeUTF(method.getName());
+            out.writeUTF(method.getReturnType());
+            out.writeInt(method.getFormalTypes().size());
+            for (String type : method.getFormalTypes()) {
+                out.writeUTF(type);
+            }
+        }
+    }
+
+    /** Read a summary written by <tt>write()</tt>
+      * @param in where to read it from
+      * @return the summary
+      * @throws IOException if reading fails
+      * */
+    public static ClassSummary read(DataInput in) throws IOException {
+        ClassSummary summary = new ClassSummary(in.readUTF(), readNullable(in), in.readUTF(),
+                in.readInt(), in.readBoolean(), in.readBoolean());
+        int numFields = in.readInt();
+        for (int i = 0; i < numFields; i++) {
+            summary.fields.add(new FieldSignature(in.readUTF(), in.readUTF(), in.readInt()));
+        }
+        int numMethods = in.readInt();
+        for (int i = 0; i < numMethods; i++) {
+            var method = new MethodSignature(in.readUTF(), in.readUTF(), in.readInt());
+            int numFormals = in.readInt();
+            for (int j = 0; j < numFormals; j++) {
+                method.addFormal(in.readUTF(), in.readUTF());
+            }
+            summary.methods.add(method);
+        }
+        return summary;
+    }
+
+    private static void writeNullable(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,7 +1,9 @@
 package codegenjvm;
 
 import java.util.*;
+import java.util.function.*;
 import ast.*;
+import semant.*;
 import util.*;
 import visitor.*;
 import java.io.*;
@@ -13,7 +15,6 @@ public class CodeGenVisitor extends Visitor {
     StringBuffer methodBuffer = new StringBuffer();
     StringBuffer stmtBuffer = new StringBuffer();
     StringBuffer exprBuffer = new StringBuffer();
-    ArrayList<String> args = new ArrayList<>();
     boolean hasConstructor = false;
     boolean hasReturn = false;
     int stackSize = 0;
@@ -23,15 +24,50 @@ public class CodeGenVisitor extends Visitor {
     String className;
     String parentName;
     ArrayList<Integer> stack = new ArrayList<>();
+    /** Method tables of the program by class name, for the signatures of the methods called */
+    private Function<String, MethodTable> methodTables;
 
+    /**
+     * @param analyzer analyzer that type checked the program
+     */
+    public CodeGenVisitor(SemanticAnalyzer analyzer) {
+        this(analyzer::getMethodTable);
+    }
+
+    /**
+     * @param methodTables method table of each class by name
+     */
+    public CodeGenVisitor(Function<String, MethodTable> methodTables) {
+        this.methodTables = methodTables;
+    }
 
     /**
      * Visit a class node
      */
     public Object visit(Class_ node) {
+        generateSource(node);
+        writeToFile(className + ".j");
+        return null;
+    }
+
+    /**
+     * Generate the code for a class without writing it out
+     *
+     * @param node the class node
+     * @return contents of the class's .j file
+     */
+    public String generateSource(Class_ node) {
         sourceCode.setLength(0); // reset for new class
         methodBuffer.setLength(0);
         fieldBuffer.setLength(0);
+        stmtBuffer.setLength(0);
+        exprBuffer.setLength(0);
+        hasConstructor = false;
+        hasReturn = false;
+        stack = new ArrayList<Integer>();
+        stackSize = 0;
+        locals = 1;
+        counter = 0;
         fileName = node.getFilename();
         className = node.getName();
         parentName = node.getParent();
@@ -39,10 +75,11 @@ public class CodeGenVisitor extends Visitor {
         sourceCode.append(
                 String.format(".source %s%n.class protected %s%n.super %s%n" + 
                         ".implements java/lang/Cloneable%n%n",
-                        fileName, className, builtInDescriptors(parentName)));
+                        fileName, className, Type.of(parentName).getInternalName()));
         node.getMemberList().accept(this);
-        writeToFile(className + ".j");
-        return null;
+        sourceCode.append(fieldBuffer);
+        sourceCode.append(methodBuffer);
+        return sourceCode.toString();
     }
 
     /**
@@ -66,7 +103,7 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(Field node) {
         fieldBuffer.append(
                 String.format(".field protected %s %s%n", node.getName(), 
-                builtInDescriptors(node.getType())));
+                descriptors(node.getType())));
         if (node.getInit() != null)
             node.getInit().accept(this);
         return null;
@@ -82,11 +119,9 @@ public class CodeGenVisitor extends Visitor {
         }
         methodBuffer.append(boilerPlateMain());
         methodBuffer.append(
-                String.format(".method protected %s(", node.getName()));
+                String.format(".method protected %s%s%n.throws java/lang/CloneNotSupportedException%n", 
+                node.getName(), signature(className, node.getName()).getDescriptor()));
         node.getFormalList().accept(this);
-        methodBuffer.append(
-                String.format(")%s%n.throws java/lang/CloneNotSupportedException%n", 
-                builtInDescriptors(node.getReturnType())));
         node.getStmtList().accept(this);
         methodBuffer.append(String.format(
                 "    .limit stack %d%n    .limit locals %d%n", 
@@ -95,6 +130,7 @@ public class CodeGenVisitor extends Visitor {
         stackSize = 0; 
         locals = 0;
         methodBuffer.append(stmtBuffer);
+        stmtBuffer.setLength(0); // statements belong to this method only
         if (!hasReturn) {
             methodBuffer.append(String.format("    return%n"));
             hasReturn = false;
@@ -110,7 +146,6 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(FormalList node) {
         for (Iterator it = node.getIterator(); it.hasNext(); ++locals) {
             var formal = (Formal) it.next();
-            methodBuffer.append(formal.getType());
             formal.accept(this);
         }
         return null;
@@ -323,10 +358,8 @@ public class CodeGenVisitor extends Visitor {
      * Visit a list node of expressions
      */
     public Object visit(ExprList node) {
-        args.clear(); // Reset argument list
         for (Iterator it = node.getIterator(); it.hasNext();) {
             var expr = (Expr) it.next();
-            args.add(expr.getExprType());
             expr.accept(this);
         }
         return null;
@@ -338,21 +371,31 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(DispatchExpr node) {
         var refExpr = node.getRefExpr();
         refExpr.accept(this);
+        // this and super have no expression type, their class is known here
         var type = refExpr.getExprType();
-        
-        args.clear(); // Reset argument list before collecting new ones
+        var instruction = "invokevirtual";
+        if (refExpr instanceof VarExpr && ((VarExpr) refExpr).getRef() == null) {
+            if (((VarExpr) refExpr).getName().equals("this")) {
+                type = className;
+            } else if (((VarExpr) refExpr).getName().equals("super")) {
+                type = parentName;
+                instruction = "invokespecial";
+            }
+        }
+        var signature = signature(type, node.getMethodName());
+
         node.getActualList().accept(this);
         
         exprBuffer.append(
-            String.format("    invokevirtual %s/%s(%s)%s%n", 
-                type, 
+            String.format("    %s %s/%s%s%n", 
+                instruction,
+                Type.of(type).getInternalName(), 
                 node.getMethodName(), 
-                getArgTypes(), 
-                builtInDescriptors(node.getExprType()))
+                signature.getDescriptor())
         );
         
         // Update stack size based on method return type
-        if (!node.getExprType().equals("void")) {
+        if (!signature.getReturnType().isVoid()) {
             stackSize++;
             stack.add(stackSize);
         } else {
@@ -464,7 +507,7 @@ public class CodeGenVisitor extends Visitor {
             
             exprBuffer.append(String.format("    swap\n"));
             exprBuffer.append(String.format("    putfield %s/%s %s\n", 
-                className, var, builtInDescriptors(type)));
+                className, var, descriptors(type)));
             stackSize -= 2; // Pop object ref and value
         } else {
             // Local variable
@@ -1146,11 +1189,19 @@ public class CodeGenVisitor extends Visitor {
             // Field access via reference
             node.getRef().accept(this);
             
+            // this and super have no expression type, their class is known here
             String refType = node.getRef().getExprType();
+            if (node.getRef() instanceof VarExpr && ((VarExpr) node.getRef()).getRef() == null) {
+                if (((VarExpr) node.getRef()).getName().equals("this")) {
+                    refType = className;
+                } else if (((VarExpr) node.getRef()).getName().equals("super")) {
+                    refType = parentName;
+                }
+            }
             String type = node.getExprType();
             
             exprBuffer.append(String.format("    getfield %s/%s %s\n", 
-                refType, varName, builtInDescriptors(type)));
+                refType, varName, descriptors(type)));
             
             // Stack size change: pop reference, push field value
             // No net change in stack size
@@ -1187,7 +1238,7 @@ public class CodeGenVisitor extends Visitor {
                 
                 String type = node.getExprType();
                 exprBuffer.append(String.format("    getfield %s/%s %s\n", 
-                    className, varName, builtInDescriptors(type)));
+                    className, varName, descriptors(type)));
                 
                 // No net change in stack size (pop this, push field)
             }
@@ -1217,7 +1268,7 @@ public class CodeGenVisitor extends Visitor {
                 // Field array
                 exprBuffer.append("    aload_0\n");
                 exprBuffer.append(String.format("    getfield %s/%s [%s\n", 
-                    className, arrayName, builtInDescriptors(node.getExprType())));
+                    className, arrayName, descriptors(node.getExprType())));
             }
             
             stackSize++;
@@ -1322,10 +1373,18 @@ public class CodeGenVisitor extends Visitor {
     }
 
     public void writeToFile(String fileName) {
-        sourceCode.append(fieldBuffer);
-        sourceCode.append(methodBuffer);
+        writeToFile(fileName, sourceCode);
+    }
+
+    /**
+     * Write generated code to a file
+     *
+     * @param fileName name of the file
+     * @param source   code to write
+     */
+    public static void writeToFile(String fileName, CharSequence source) {
         try (var pw = new PrintStream(new FileOutputStream(fileName), true)) {
-            pw.print(sourceCode);
+            pw.print(source);
         } catch (FileNotFoundException fnfe) {
             fnfe.printStackTrace();
         }
@@ -1335,32 +1394,7 @@ public class CodeGenVisitor extends Visitor {
      * Convert Java types to JVM descriptor format
      */
     public String descriptors(String type) {
-        switch (type) {
-            case "int":
-                return "I";
-            case "boolean":
-                return "Z";
-            case "void":
-                return "V";
-            default:
-                String descriptor = type.endsWith("[]") ? 
-                    String.format("[L%s;", type) : String.format("L%s;", type);
-                return descriptor;
-        }
-    }
-
-    /**
-     * Handle built-in types for JVM descriptor format
-     */
-    public String builtInDescriptors(String type) {
-        switch (type) {
-            case "Object":
-                return "java/lang/Object";
-            case "String":
-                return "Ljava/lang/String;";
-            default:
-                return descriptors(type);
-        }
+        return Type.of(type).getDescriptor();
     }
 
     /**
@@ -1393,7 +1427,7 @@ public class CodeGenVisitor extends Visitor {
                 "    invokespecial %s/<init>()V%n" + 
                 "    return%n" + 
                 ".end method%n%n", 
-                builtInDescriptors(parentName));
+                Type.of(parentName).getInternalName());
     }
 
     /**
@@ -1435,13 +1469,19 @@ public class CodeGenVisitor extends Visitor {
         }
         return max;
     }
-    public String getArgTypes() {
-        String argList = "";
-        for(String arg : args) {
-            argList += builtInDescriptors(arg);
+
+    /**
+     * Get the signature of a method as declared, looked up in the method
+     * table of the class it is called on
+     */
+    private Signature signature(String type, String methodName) {
+        var methods = methodTables.apply(type);
+        var entry = methods == null ? null : methods.lookup(methodName);
+        if (entry == null) {
+            throw new IllegalStateException("no method " + type + "." + methodName);
         }
-        return argList;
-    } 
+        return entry.getSignature();
+    }
 }
 
 
@@ -0,0 +1,83 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import semant.*;
+import util.*;
+
+/**
+ * Outcome of compiling one program with a CompilerSession: the errors
+ * found and, if there were none, the generated Jasmin code of each class.
+ */
+public class CompilationResult {
+    /** Errors in report order */
+    private List<DiagnosticSink.Diagnostic> diagnostics;
+
+    /** Generated code by class name (empty if there were errors) */
+    private Map<String, String> classes;
+
+    /** Root of the class hierarchy tree */
+    private ClassTreeNode root;
+
+    CompilationResult(List<DiagnosticSink.Diagnostic> diagnostics, Map<String, String> classes,
+            ClassTreeNode root) {
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        this.classes = Collections.unmodifiableMap(classes);
+        this.root = root;
+    }
+
+    /**
+     * Check whether the program compiled
+     *
+     * @return true if there were no errors
+     */
+    public boolean isSuccess() {
+        return diagnostics.isEmpty();
+    }
+
+    /**
+     * Get the errors found
+     *
+     * @return unmodifiable list of errors, sorted by file, line and message
+     */
+    public List<DiagnosticSink.Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Get the generated code
+     *
+     * @return unmodifiable map from class name to the contents of its .j
+     *         file, in breadth-first order of the class tree
+     */
+    public Map<String, String> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Get the root of the class hierarchy tree
+     *
+     * @return root, or null if the class tree could not be built
+     */
+    public ClassTreeNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Write the generated code out as ClassName.j files
+     *
+     * @param outputDir directory to write to
+     * @param fsync     whether to force the files to disk before returning
+     * @throws IOException if a file cannot be written
+     */
+    public void writeTo(Path outputDir, boolean fsync) throws IOException {
+        try (ClassFileWriter writer =
+                new ClassFileWriter(outputDir, ClassFileWriter.DEFAULT_QUEUE_CAPACITY, fsync)) {
+            for (var entry : classes.entrySet()) {
+                writer.submit(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
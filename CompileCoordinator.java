@@ -0,0 +1,335 @@
+package codegenjvm;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Compiles a program with the help of worker processes on the same
+ * machine. The coordinator builds and checks the class tree and the class
+ * environments itself, once, and ships them to the workers as member
+ * summaries; the user classes are split into one shard per worker, balanced
+ * by estimated size, and each worker type checks and generates its shard.
+ * If a worker fails, does not start, or does not answer within its
+ * shard's deadline, its shard is handed to another worker, or compiled by
+ * the coordinator if none is left. The errors and
+ * code of all shards are reported and written exactly as in a
+ * single-process compile.
+ */
+public class CompileCoordinator {
+    /** How long to wait for each worker to connect, in ms */
+    private static final int CONNECT_TIMEOUT_MS = 30000;
+
+    /** How long a worker may take to answer a job, in ms, plus SHARD_TIMEOUT_PER_UNIT_MS per unit of estimated size */
+    private static final int SHARD_TIMEOUT_MS = 60000;
+
+    /** Additional time a worker gets per unit of estimated size of its shard, in ms */
+    private static final int SHARD_TIMEOUT_PER_UNIT_MS = 10;
+
+    /** How long to wait for a worker process to exit once it has been told to, in ms */
+    private static final int EXIT_TIMEOUT_MS = 5000;
+
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Number of worker processes */
+    private int workers;
+
+    /** Command that starts a worker; "--worker PORT" is appended */
+    private List<String> workerCommand;
+
+    /** Directory the .j files are written to (the working directory by default) */
+    private Path outputDir = Paths.get("");
+
+    /** Whether the .j files are forced to disk before run() returns */
+    private boolean fsync = false;
+
+    /** A set of classes compiled together */
+    private static class Shard {
+        int id;
+        int size;
+        List<String> classes = new ArrayList<String>();
+
+        Shard(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * CompileCoordinator constructor
+     *
+     * @param debug         boolean indicating whether debugging is enabled
+     * @param workers       number of worker processes to start
+     * @param workerCommand command line that starts a worker, without "--worker PORT"
+     */
+    public CompileCoordinator(boolean debug, int workers, List<String> workerCommand) {
+        this.debug = debug;
+        this.workers = Math.max(1, workers);
+        this.workerCommand = new ArrayList<String>(workerCommand);
+    }
+
+    /**
+     * Build the command that runs a class of this JVM's class path in a new JVM
+     *
+     * @param mainClass driver class, which must handle "--worker PORT"
+     * @return the command
+     */
+    public static List<String> javaCommand(String mainClass) {
+        return new ArrayList<String>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), mainClass));
+    }
+
+    public void setOutputDirectory(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * Analyze a program and generate code for it
+     *
+     * @param analyzer    analyzer for the program
+     * @param sourceFiles files the program was parsed from (the workers parse them again)
+     * @return root of the class hierarchy tree
+     */
+    public ClassTreeNode run(SemanticAnalyzer analyzer, String[] sourceFiles) {
+        Map<String, String> sources = new ConcurrentHashMap<String, String>();
+        if (!analyzer.buildEnvironment()) {
+            // the environments are not sound enough to ship; just report the errors
+            if (!analyzer.getDiagnosticSink().isCancelled()) {
+                analyzer.typeCheckClasses(userClasses(analyzer.getClassRegistry()));
+            }
+        } else {
+            List<Shard> shards = partition(analyzer.getClassRegistry());
+            // a shard's results are merged by whoever claims it first, so a
+            // worker that finishes late cannot add its errors a second time
+            Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+            try {
+                distribute(analyzer, shards, sourceFiles, sources, claimed);
+            } catch (IOException e) {
+                if (debug) {
+                    e.printStackTrace();
+                }
+            }
+            // whatever no worker delivered (failed, hung or never started) is compiled here
+            for (Shard shard : shards) {
+                if (claimed.add(shard.id)) {
+                    compileLocally(analyzer, shard, sources);
+                }
+            }
+        }
+        analyzer.checkErrors();
+
+        ClassFileWriter writer =
+                new ClassFileWriter(outputDir, ClassFileWriter.DEFAULT_QUEUE_CAPACITY, fsync);
+        try {
+            for (var entry : sources.entrySet()) {
+                writer.submit(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return analyzer.getClassRegistry().get("Object");
+    }
+
+    /**
+     * Split the user classes into one shard per worker, giving each class
+     * in turn (largest first) to the shard with the least work so far
+     */
+    private List<Shard> partition(ClassRegistry registry) {
+        List<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+        for (ClassTreeNode ctn : registry.getClasses()) {
+            if (!ctn.isBuiltIn()) {
+                classes.add(ctn);
+            }
+        }
+        classes.sort(Comparator.comparingInt(
+                (ClassTreeNode ctn) -> JVMCodeGenerator.estimateSize(ctn.getASTNode())).reversed());
+
+        int n = Math.max(1, Math.min(workers, classes.size()));
+        PriorityQueue<Shard> lightest = new PriorityQueue<Shard>(
+                Comparator.comparingInt((Shard s) -> s.size).thenComparingInt(s -> s.id));
+        List<Shard> shards = new ArrayList<Shard>();
+        for (int i = 0; i < n; i++) {
+            shards.add(new Shard(i));
+        }
+        lightest.addAll(shards);
+        for (ClassTreeNode ctn : classes) {
+            Shard shard = lightest.poll();
+            shard.classes.add(ctn.getName());
+            shard.size += JVMCodeGenerator.estimateSize(ctn.getASTNode());
+            lightest.add(shard);
+        }
+        return shards;
+    }
+
+    /**
+     * Start the workers and have them compile the shards; shards no worker
+     * delivered are left unclaimed
+     */
+    private void distribute(SemanticAnalyzer analyzer, List<Shard> shards,
+            String[] sourceFiles, Map<String, String> sources, Set<Integer> claimed)
+            throws IOException {
+        byte[] environment = CompileProtocol.encodeEnvironment(analyzer.getClassRegistry());
+        BlockingQueue<Shard> pending = new LinkedBlockingQueue<Shard>(shards);
+        AtomicInteger remaining = new AtomicInteger(shards.size());
+        List<Process> processes = new ArrayList<Process>();
+        ExecutorService handlers = Executors.newFixedThreadPool(shards.size());
+        // even a single worker doing every shard in turn is done by then
+        long deadline = 0;
+        for (Shard shard : shards) {
+            deadline += shardTimeout(shard);
+        }
+        try (ServerSocket server = new ServerSocket(0, shards.size(), InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MS);
+            for (int i = 0; i < shards.size(); i++) {
+                List<String> command = new ArrayList<String>(workerCommand);
+                command.add("--worker");
+                command.add(Integer.toString(server.getLocalPort()));
+                processes.add(new ProcessBuilder(command)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    break; // carry on with the workers that did connect
+                }
+                handlers.execute(() -> serve(socket, analyzer, pending, remaining,
+                        sourceFiles, environment, sources, claimed));
+            }
+            handlers.shutdown();
+            if (!handlers.awaitTermination(deadline, TimeUnit.MILLISECONDS) && debug) {
+                System.err.println("coordinator: workers did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            handlers.shutdownNow();
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // with the workers gone, a handler still merging a result finishes promptly
+            try {
+                handlers.awaitTermination(EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Time a worker gets to answer a shard's job, in ms
+     */
+    private static int shardTimeout(Shard shard) {
+        return (int) Math.min(Integer.MAX_VALUE,
+                SHARD_TIMEOUT_MS + (long) shard.size * SHARD_TIMEOUT_PER_UNIT_MS);
+    }
+
+    /**
+     * Feed shards to one worker until all shards are done or the worker
+     * fails; a failed shard is put back for the other workers
+     */
+    private void serve(Socket socket, SemanticAnalyzer analyzer, BlockingQueue<Shard> pending,
+            AtomicInteger remaining, String[] sourceFiles, byte[] environment,
+            Map<String, String> sources, Set<Integer> claimed) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            boolean first = true;
+            while (remaining.get() > 0) {
+                Shard shard = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (shard == null) {
+                    continue; // another worker may still fail and give its shard back
+                }
+                CompileProtocol.Result result;
+                try {
+                    // a worker that hangs without closing its socket gives the shard back
+                    socket.setSoTimeout(shardTimeout(shard));
+                    CompileProtocol.writeJob(out, shard.id, shard.classes, sourceFiles,
+                            first ? environment : null);
+                    result = CompileProtocol.readResult(in);
+                } catch (IOException e) {
+                    // includes SocketTimeoutException: the worker is dropped either way
+                    pending.add(shard);
+                    if (debug) {
+                        System.err.println("coordinator: worker failed on shard " + shard.id + ": " + e);
+                    }
+                    return;
+                }
+                first = false;
+                if (claimed.add(shard.id)) {
+                    var sink = analyzer.getDiagnosticSink();
+                    for (DiagnosticSink.Diagnostic d : result.diagnostics) {
+                        if (d.getFilename() == null) {
+                            sink.register(d.getType(), d.getMessage());
+                        } else {
+                            sink.register(d.getType(), d.getFilename(), d.getLineNum(), d.getMessage());
+                        }
+                    }
+                    sources.putAll(result.sources);
+                }
+                remaining.decrementAndGet();
+            }
+            out.writeInt(CompileProtocol.END);
+            out.flush();
+        } catch (IOException e) {
+            // all shards are done; the worker is killed if it does not exit
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compile a shard in this process
+     */
+    private void compileLocally(SemanticAnalyzer analyzer, Shard shard, Map<String, String> sources) {
+        if (debug) {
+            System.err.println("coordinator: compiling shard " + shard.id + " locally");
+        }
+        analyzer.typeCheckClasses(shard.classes);
+        if (analyzer.getDiagnosticSink().errorsFound()) {
+            return; // nothing will be written
+        }
+        CodeGenVisitor codeGenVisitor = new CodeGenVisitor(analyzer);
+        for (String name : shard.classes) {
+            Class_ clazz = analyzer.getClassRegistry().get(name).getASTNode();
+            sources.put(name, codeGenVisitor.generateSource(clazz));
+        }
+    }
+
+    private static List<String> userClasses(ClassRegistry registry) {
+        List<String> names = new ArrayList<String>();
+        for (ClassTreeNode ctn : registry.getClasses()) {
+            if (!ctn.isBuiltIn()) {
+                names.add(ctn.getName());
+            }
+        }
+        return names;
+    }
+}
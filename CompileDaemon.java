@@ -0,0 +1,221 @@
+package codegenjvm;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import semant.*;
+import util.*;
+
+/**
+ * Long-running compiler process. Clients connect to a local port and send
+ * compile requests; each one is handled on its own (virtual, where the
+ * JVM has them) thread, so the JVM start-up and JIT warm-up are paid once
+ * rather than for every compile. The CPU-heavy part of a request (parse,
+ * analysis and code generation) only runs once it gets one of a fixed
+ * number of permits, so a burst of requests cannot oversubscribe the
+ * machine; waiting requests cost nothing but a parked thread.
+ *
+ * The protocol is line based (UTF-8), so a client can be a shell script:
+ * <pre>
+ *   OUT dir          directory to write the .j files to (default: the daemon's)
+ *   FILE path        a source file of the program (repeated)
+ *   COMPILE          compile the files given so far
+ *   STOP             shut the daemon down
+ * </pre>
+ * A compile is answered with one "ERROR file:line: message" line per
+ * error, one "WROTE ClassName.j" line per file written, and finally
+ * "OK" or "FAILED n". Paths are resolved by the daemon, so clients must
+ * be on the same machine.
+ */
+public class CompileDaemon implements Closeable {
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Front end used to parse the programs */
+    private ProgramParser parser;
+
+    /** Compiles the programs (sequentially each; requests run side by side) */
+    private CompilerSession session;
+
+    /** Socket the daemon listens on */
+    private ServerSocket server;
+
+    /** Runs the connections, one thread each */
+    private ExecutorService connections;
+
+    /** Permits for the CPU-heavy phases of a request */
+    private Semaphore admission;
+
+    /** Number of compiles completed so far */
+    private AtomicLong compiles = new AtomicLong();
+
+    /**
+     * CompileDaemon constructor; binds the port but does not accept yet
+     *
+     * @param parser    front end used to parse the programs
+     * @param port      local port to listen on (0 for any free port)
+     * @param maxActive number of requests compiled at once; 0 or less means one per processor
+     * @param debug     boolean indicating whether debugging is enabled
+     * @throws IOException if the port cannot be bound
+     */
+    public CompileDaemon(ProgramParser parser, int port, int maxActive, boolean debug) throws IOException {
+        this.parser = parser;
+        this.debug = debug;
+        this.session = new CompilerSession(debug, 1);
+        this.server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.connections = newThreadPerTaskExecutor();
+        this.admission = new Semaphore(
+                maxActive > 0 ? maxActive : Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Get the port the daemon listens on
+     *
+     * @return local port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accept and serve connections until STOP is received or the daemon is closed
+     */
+    public void serve() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                break; // closed
+            }
+            try {
+                connections.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+        connections.shutdown();
+    }
+
+    /**
+     * Stop accepting connections; requests already accepted are finished
+     */
+    public void close() throws IOException {
+        server.close();
+        connections.shutdown();
+    }
+
+    /**
+     * Serve the requests of one connection
+     */
+    private void handle(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+            Path outputDir = Paths.get("");
+            List<String> files = new ArrayList<String>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("OUT ")) {
+                    outputDir = Paths.get(line.substring(4));
+                } else if (line.startsWith("FILE ")) {
+                    files.add(line.substring(5));
+                } else if (line.equals("COMPILE")) {
+                    compile(files.toArray(new String[0]), outputDir, out);
+                    files.clear();
+                } else if (line.equals("STOP")) {
+                    out.println("OK");
+                    out.flush();
+                    close();
+                    return;
+                } else if (!line.isEmpty()) {
+                    out.println("FAILED unknown command '" + line + "'");
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (debug) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Compile one program and write the answer
+     */
+    private void compile(String[] files, Path outputDir, PrintWriter out) {
+        long start = System.nanoTime();
+        CompilationResult result;
+        try {
+            admission.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("FAILED interrupted");
+            return;
+        }
+        try {
+            result = session.compile(parser.parse(files));
+        } catch (Exception e) {
+            out.println("FAILED " + e);
+            return;
+        } finally {
+            admission.release();
+        }
+
+        for (DiagnosticSink.Diagnostic d : result.getDiagnostics()) {
+            out.println(d.getFilename() == null ? "ERROR " + d.getMessage()
+                    : "ERROR " + d.getFilename() + ":" + d.getLineNum() + ": " + d.getMessage());
+        }
+        if (!result.isSuccess()) {
+            out.println("FAILED " + result.getDiagnostics().size());
+            return;
+        }
+        try {
+            result.writeTo(outputDir, false);
+        } catch (IOException e) {
+            out.println("FAILED " + e);
+            return;
+        }
+        for (String name : result.getClasses().keySet()) {
+            out.println("WROTE " + name + ".j");
+        }
+        out.println("OK");
+        long n = compiles.incrementAndGet();
+        if (debug) {
+            System.err.printf("daemon: compile #%d, %d classes, %.1f ms%n", n,
+                    result.getClasses().size(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    /**
+     * An executor with a virtual thread per task where the JVM supports
+     * them (Java 21+), otherwise a cached pool of daemon platform threads
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "compile-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import semant.*;
+
+/**
+ * Messages exchanged between a CompileCoordinator and its CompileWorker
+ * processes. The coordinator sends jobs, each naming a shard of classes to
+ * type check and generate; the first job on a connection also carries the
+ * source file names and the class environments. The worker answers every
+ * job with the errors it found and, if there were none, the generated
+ * code of the shard.
+ */
+final class CompileProtocol {
+    /** Message tag of a job */
+    static final int JOB = 1;
+
+    /** Message tag that tells the worker to exit */
+    static final int END = 0;
+
+    private CompileProtocol() {
+    }
+
+    /** A job as received by a worker */
+    static class Job {
+        int shard;
+        String[] sourceFiles;
+        byte[] environment;
+        List<String> classes = new ArrayList<String>();
+    }
+
+    /** The answer to one job */
+    static class Result {
+        int shard;
+        List<DiagnosticSink.Diagnostic> diagnostics = new ArrayList<DiagnosticSink.Diagnostic>();
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+    }
+
+    /**
+     * Serialize the class environments of an analyzed program
+     *
+     * @param registry classes of the program
+     * @return summaries of all classes, in id order (parents before children)
+     */
+    static byte[] encodeEnvironment(ClassRegistry registry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(registry.size());
+        for (var ctn : registry.getClasses()) {
+            ClassSummary.of(ctn).write(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<ClassSummary> decodeEnvironment(byte[] environment) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(environment));
+        int n = in.readInt();
+        List<ClassSummary> summaries = new ArrayList<ClassSummary>(n);
+        for (int i = 0; i < n; i++) {
+            summaries.add(ClassSummary.read(in));
+        }
+        return summaries;
+    }
+
+    /**
+     * Send a job
+     *
+     * @param environment  encoded environments and source files, or null if
+     *                     the worker already has them
+     */
+    static void writeJob(DataOutputStream out, int shard, List<String> classes,
+            String[] sourceFiles, byte[] environment) throws IOException {
+        out.writeInt(JOB);
+        out.writeInt(shard);
+        out.writeBoolean(environment != null);
+        if (environment != null) {
+            out.writeInt(sourceFiles.length);
+            for (String file : sourceFiles) {
+                out.writeUTF(file);
+            }
+            out.writeInt(environment.length);
+            out.write(environment);
+        }
+        out.writeInt(classes.size());
+        for (String name : classes) {
+            out.writeUTF(name);
+        }
+        out.flush();
+    }
+
+    /**
+     * Receive a job (the JOB tag has already been read)
+     */
+    static Job readJob(DataInputStream in) throws IOException {
+        Job job = new Job();
+        job.shard = in.readInt();
+        if (in.readBoolean()) {
+            job.sourceFiles = new String[in.readInt()];
+            for (int i = 0; i < job.sourceFiles.length; i++) {
+                job.sourceFiles[i] = in.readUTF();
+            }
+            job.environment = new byte[in.readInt()];
+            in.readFully(job.environment);
+        }
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            job.classes.add(in.readUTF());
+        }
+        return job;
+    }
+
+    static void writeResult(DataOutputStream out, Result result) throws IOException {
+        out.writeInt(result.shard);
+        out.writeInt(result.diagnostics.size());
+        for (DiagnosticSink.Diagnostic d : result.diagnostics) {
+            out.writeInt(d.getType());
+            out.writeBoolean(d.getFilename() != null);
+            if (d.getFilename() != null) {
+                out.writeUTF(d.getFilename());
+            }
+            out.writeInt(d.getLineNum());
+            writeString(out, d.getMessage());
+        }
+        out.writeInt(result.sources.size());
+        for (var entry : result.sources.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        out.flush();
+    }
+
+    static Result readResult(DataInputStream in) throws IOException {
+        Result result = new Result();
+        result.shard = in.readInt();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int type = in.readInt();
+            String filename = in.readBoolean() ? in.readUTF() : null;
+            int lineNum = in.readInt();
+            result.diagnostics.add(
+                    new DiagnosticSink.Diagnostic(type, filename, lineNum, readString(in), new Object[0]));
+        }
+        n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            result.sources.put(name, readString(in));
+        }
+        return result;
+    }
+
+    /**
+     * Write a string of any length (writeUTF() is limited to 64K bytes,
+     * which a generated class can exceed)
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
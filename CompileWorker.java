@@ -0,0 +1,84 @@
+package codegenjvm;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Worker process of a distributed compilation. It connects to the
+ * coordinator's local port, parses the program once, sets up the class
+ * environments from the summaries sent by the coordinator (so the class
+ * tree and member checks are not repeated), and then type checks and
+ * generates each shard of classes it is given until it is told to stop.
+ * The driver starts it when it is run with <tt>--worker PORT</tt>, passing
+ * in its parser.
+ */
+public class CompileWorker {
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Front end used to parse the program */
+    private ProgramParser parser;
+
+    public CompileWorker(ProgramParser parser, boolean debug) {
+        this.parser = parser;
+        this.debug = debug;
+    }
+
+    /**
+     * Serve jobs from a coordinator until it sends END or closes the connection
+     *
+     * @param port local port the coordinator listens on
+     * @throws Exception if the connection fails or the program cannot be parsed
+     */
+    public void run(int port) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Program program = null;
+            List<ClassSummary> environment = null;
+            while (in.readInt() == CompileProtocol.JOB) {
+                CompileProtocol.Job job = CompileProtocol.readJob(in);
+                if (job.environment != null) {
+                    program = parser.parse(job.sourceFiles);
+                    environment = CompileProtocol.decodeEnvironment(job.environment);
+                }
+                if (program == null) {
+                    throw new IOException("job received before the environment");
+                }
+                CompileProtocol.writeResult(out, compile(program, environment, job));
+            }
+        }
+    }
+
+    /**
+     * Type check and generate one shard
+     */
+    private CompileProtocol.Result compile(Program program, List<ClassSummary> environment,
+            CompileProtocol.Job job) {
+        long start = System.nanoTime();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(program, debug);
+        analyzer.loadEnvironment(environment);
+        analyzer.typeCheckClasses(job.classes);
+
+        CompileProtocol.Result result = new CompileProtocol.Result();
+        result.shard = job.shard;
+        result.diagnostics.addAll(analyzer.getDiagnosticSink().getDiagnostics());
+        if (result.diagnostics.isEmpty()) {
+            CodeGenVisitor codeGenVisitor = new CodeGenVisitor(analyzer);
+            for (String name : job.classes) {
+                var ctn = analyzer.getClassRegistry().get(name);
+                result.sources.put(name, codeGenVisitor.generateSource(ctn.getASTNode()));
+            }
+        }
+        if (debug) {
+            System.err.printf("worker: shard %d, %d classes, %.1f ms%n", job.shard,
+                    job.classes.size(), (System.nanoTime() - start) / 1e6);
+        }
+        return result;
+    }
+}
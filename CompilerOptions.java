@@ -0,0 +1,268 @@
+package util;
+
+import java.util.*;
+
+/** Options that control how the compiler phases are executed.
+  * The driver hands its command line to <tt>parse()</tt>; the switches
+  * recognized here are consumed and every other argument is kept, in order,
+  * in <tt>getRemainingArgs()</tt> for the usual Bantam flag handling.
+  * */
+public class CompilerOptions {
+    /** Number of worker threads used by the parallel phases (1 means sequential) */
+    private int jobs = 1;
+
+    /** Whether code generation is overlapped with type checking */
+    private boolean pipeline = false;
+
+    /** Analysis stops after this many errors (0 = no limit) */
+    private int maxErrors = 0;
+
+    /** Whether generated files are forced to disk before the compiler exits */
+    private boolean fsync = false;
+
+    /** Number of worker processes to distribute the program over (0 = compile in this process) */
+    private int workers = 0;
+
+    /** If not 0, run as a worker for the coordinator listening on this local port */
+    private int workerPort = 0;
+
+    /** If not 0, run as a compile daemon listening on this local port */
+    private int daemonPort = 0;
+
+    /** If not 0, run as a diagnostics server listening on this local port */
+    private int diagnosticsPort = 0;
+
+    /** Directory of the incremental build cache (null = no cache) */
+    private String cacheDir;
+
+    /** Class libraries to compile against */
+    private List<String> libraries = new ArrayList<String>();
+
+    /** If not null, write the interfaces of the compiled classes to this library file */
+    private String libraryOutput;
+
+    /** Whether to keep running and recompile whenever a source file changes */
+    private boolean watch = false;
+
+    /** Whether code generation keeps its memory small, with a heap report per phase */
+    private boolean lowMemory = false;
+
+    /** If not null, compile the programs listed in this manifest instead */
+    private String batchManifest;
+
+    /** Arguments not recognized by this class */
+    private List<String> remainingArgs = new ArrayList<String>();
+
+    /** Parse the compiler options out of a command line
+      * @param args command line arguments
+      * @return parsed options
+      * @throws IllegalArgumentException if a switch is missing or has a bad value
+      * */
+    public static CompilerOptions parse(String[] args) {
+        CompilerOptions options = new CompilerOptions();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs":
+                    options.setJobs(intValue(args, ++i));
+                    break;
+                case "--pipeline":
+                    options.pipeline = true;
+                    break;
+                case "--max-errors":
+                    options.maxErrors = Math.max(0, intValue(args, ++i));
+                    break;
+                case "--fsync":
+                    options.fsync = true;
+                    break;
+                case "--watch":
+                    options.watch = true;
+                    break;
+                case "--workers":
+                    options.workers = Math.max(0, intValue(args, ++i));
+                    break;
+                case "--worker":
+                    options.workerPort = intValue(args, ++i);
+                    break;
+                case "--cache":
+                    options.cacheDir = stringValue(args, ++i);
+                    break;
+                case "--library":
+                    options.libraries.add(stringValue(args, ++i));
+                    break;
+                case "--write-library":
+                    options.libraryOutput = stringValue(args, ++i);
+                    break;
+                case "--daemon":
+                    options.daemonPort = intValue(args, ++i);
+                    break;
+                case "--low-memory":
+                    options.lowMemory = true;
+                    break;
+                case "--batch":
+                    options.batchManifest = stringValue(args, ++i);
+                    break;
+                case "--diagnostics-server":
+                    options.diagnosticsPort = intValue(args, ++i);
+                    break;
+                default:
+                    options.remainingArgs.add(args[i]);
+            }
+        }
+        return options;
+    }
+
+    /** Get the value following a switch
+      * @param args command line arguments
+      * @param i index of the value
+      * @return the value
+      * */
+    private static String stringValue(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(
+                    String.format("missing value for '%s'", args[i - 1]));
+        }
+        return args[i];
+    }
+
+    /** Get the value following a switch as an int
+      * @param args command line arguments
+      * @param i index of the value
+      * @return the value
+      * */
+    private static int intValue(String[] args, int i) {
+        String value = stringValue(args, i);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("bad value '%s' for '%s'", value, args[i - 1]));
+        }
+    }
+
+    /** Get the number of worker threads
+      * @return number of threads (always at least 1)
+      * */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /** Set the number of worker threads
+      * @param jobs number of threads; 0 or less means one per available processor
+      * */
+    public void setJobs(int jobs) {
+        this.jobs = jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Check whether code generation should overlap with type checking
+      * @return true if the pipelined driver should be used
+      * */
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    /** Get the maximum number of errors reported before analysis stops
+      * @return the error cap (0 for no limit)
+      * */
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /** Check whether generated files must be forced to disk
+      * @return true if files are synced before the compiler exits
+      * */
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    /** Get the arguments that were not consumed by <tt>parse()</tt>
+      * @return remaining arguments in their original order
+      * */
+    public List<String> getRemainingArgs() {
+        return remainingArgs;
+    }
+
+    /** Get the number of worker processes to compile with
+      * @return number of workers (0 if the program is compiled in this process)
+      * */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /** Check whether this process is a worker of a distributed compilation
+      * @return true if <tt>--worker</tt> was given
+      * */
+    public boolean isWorker() {
+        return workerPort != 0;
+    }
+
+    /** Get the port of the coordinator this worker connects to
+      * @return local port of the coordinator (0 if not a worker)
+      * */
+    public int getWorkerPort() {
+        return workerPort;
+    }
+
+    /** Check whether this process should run as a compile daemon
+      * @return true if <tt>--daemon</tt> was given
+      * */
+    public boolean isDaemon() {
+        return daemonPort != 0;
+    }
+
+    /** Get the port the compile daemon listens on
+      * @return local port (0 if not a daemon)
+      * */
+    public int getDaemonPort() {
+        return daemonPort;
+    }
+
+    /** Get the port of the diagnostics server
+      * @return local port (0 if the program is compiled normally)
+      * */
+    public int getDiagnosticsPort() {
+        return diagnosticsPort;
+    }
+
+    /** Get the directory of the incremental build cache
+      * @return the directory, or null if classes are always regenerated
+      * */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    /** Get the class libraries to compile against
+      * @return library files, in the order given
+      * */
+    public List<String> getLibraries() {
+        return libraries;
+    }
+
+    /** Get the library file to write the compiled classes' interfaces to
+      * @return the file, or null if no library is written
+      * */
+    public String getLibraryOutput() {
+        return libraryOutput;
+    }
+
+    /** Check whether the compiler should watch the source files
+      * @return true if the program is recompiled on every change
+      * */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /** Get the manifest of the programs to compile in batch mode
+      * @return the manifest file, or null if a single program is compiled
+      * */
+    public String getBatchManifest() {
+        return batchManifest;
+    }
+
+    /** Check whether the compile should keep its heap small
+      * @return true if code generation keeps its memory small and the heap
+      *         used by each phase is reported
+      * */
+    public boolean isLowMemory() {
+        return lowMemory;
+    }
+}
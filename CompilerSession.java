@@ -0,0 +1,122 @@
+package codegenjvm;
+
+import java.util.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Library entry point to the compiler back end. A session holds the
+ * settings for any number of compiles; each call to compile() analyzes a
+ * parsed program and generates its classes entirely in memory, without
+ * reading or writing files and without depending on the working directory.
+ * Errors are returned rather than reported, so the caller's process is
+ * never exited. Compiles share no state, so one session may be used from
+ * several threads at once.
+ */
+public class CompilerSession {
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Number of threads used by each compile (1 = sequential) */
+    private int jobs = 1;
+
+    /** Analysis stops after this many errors (0 = no limit) */
+    private int maxErrors = 0;
+
+    /** Precompiled library classes every program is compiled against */
+    private List<ClassSummary> libraries = new ArrayList<ClassSummary>();
+
+    /** Whether code generation keeps its memory small, with a heap report per phase */
+    private boolean lowMemory = false;
+
+    public CompilerSession() {
+        this(false, 1);
+    }
+
+    /**
+     * CompilerSession constructor
+     *
+     * @param debug boolean indicating whether debugging is enabled
+     * @param jobs  number of threads used by each compile (1 = sequential)
+     */
+    public CompilerSession(boolean debug, int jobs) {
+        this.debug = debug;
+        this.jobs = Math.max(1, jobs);
+    }
+
+    /**
+     * Stop the analysis of a program once this many errors have been found
+     *
+     * @param maxErrors the error cap (0 for no limit)
+     */
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = Math.max(0, maxErrors);
+    }
+
+    /**
+     * Keep the generated code held during code generation small (see
+     * JVMCodeGenerator.setLowMemory(); the program's AST is not modified)
+     * and print the heap used by each phase of every compile to
+     * System.err (the figures are for the whole JVM, so they are only
+     * meaningful while one program is compiled at a time)
+     *
+     * @param lowMemory whether to run in low-memory mode
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    /**
+     * Apply the command line options that affect how each program is
+     * compiled: the error cap and low-memory mode
+     *
+     * @param options parsed compiler options
+     */
+    public void configure(CompilerOptions options) {
+        setMaxErrors(options.getMaxErrors());
+        setLowMemory(options.isLowMemory());
+    }
+
+    /**
+     * Compile every program of this session against a class library
+     *
+     * @param summaries summaries of the library's classes (see ClassLibrary)
+     */
+    public void addLibrary(Collection<ClassSummary> summaries) {
+        libraries.addAll(summaries);
+    }
+
+    /**
+     * Compile a program. The AST is annotated by the analysis, so a
+     * program should not be compiled by two threads at the same time.
+     *
+     * @param program root of the AST
+     * @return errors and generated code
+     */
+    public CompilationResult compile(Program program) {
+        HeapMonitor heap = lowMemory ? new HeapMonitor() : null;
+        if (heap != null) {
+            heap.phase("analysis");
+        }
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(program, debug, jobs);
+        analyzer.setMaxErrors(maxErrors);
+        analyzer.addLibrary(libraries);
+        List<DiagnosticSink.Diagnostic> diagnostics = analyzer.check();
+        Map<String, String> classes = Collections.emptyMap();
+        if (diagnostics.isEmpty()) {
+            if (heap != null) {
+                heap.phase("codegen");
+            }
+            JVMCodeGenerator generator = new JVMCodeGenerator(analyzer, debug, jobs);
+            generator.setLowMemory(lowMemory);
+            classes = generator.generateSources();
+        }
+        if (heap != null) {
+            heap.finish();
+            heap.report(System.err);
+        }
+        return new CompilationResult(diagnostics, classes, analyzer.getRoot());
+    }
+}
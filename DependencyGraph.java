@@ -0,0 +1,157 @@
+package semant;
+
+import util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Class-level dependency graph of a program: which classes each class
+  * refers to, and how. Inheritance edges are added from the class tree;
+  * the other edges are recorded by <tt>TypeCheckVisitor</tt> as it
+  * resolves dispatches, <tt>new</tt>, casts, <tt>instanceof</tt> and
+  * declared types. Edges can be recorded by several type checking threads
+  * at once. After an edit, <tt>affectedBy()</tt> gives the classes that
+  * must be checked again.
+  * */
+public class DependencyGraph {
+    /** How one class refers to another */
+    public enum Kind {
+        /** the class extends the other class */
+        INHERITS,
+        /** a method of the other class is called */
+        DISPATCH,
+        /** an object of the other class is created */
+        NEW,
+        /** a value is cast to the other class */
+        CAST,
+        /** a value is tested with instanceof against the other class */
+        INSTANCEOF,
+        /** a field, formal, local or return type names the other class */
+        TYPE
+    }
+
+    /** Edges by source class, then by target class */
+    private Map<String, Map<String, Set<Kind>>> edges =
+            new ConcurrentHashMap<String, Map<String, Set<Kind>>>();
+
+    /** Add the inheritance edges of all classes in a registry
+      * @param registry classes of the program
+      * */
+    public void addInheritance(ClassRegistry registry) {
+        for (ClassTreeNode ctn : registry.getClasses()) {
+            if (ctn.getParent() != null) {
+                add(ctn.getName(), ctn.getParent().getName(), Kind.INHERITS);
+            }
+        }
+    }
+
+    /** Record that one class refers to another. References to the class
+      * itself and to primitive types are ignored; array types count as
+      * references to their element class. Undefined types are kept, so
+      * that defining the class later affects the classes naming it.
+      * @param from class making the reference
+      * @param to type referred to
+      * @param kind how it is referred to
+      * */
+    public void add(String from, String to, Kind kind) {
+        if (to == null) {
+            return;
+        }
+        if (to.endsWith("[]")) {
+            to = to.substring(0, to.length() - 2);
+        }
+        if (to.equals(from) || to.equals("int") || to.equals("boolean") || to.equals("void")) {
+            return;
+        }
+        edges.computeIfAbsent(from, k -> new ConcurrentHashMap<String, Set<Kind>>())
+                .computeIfAbsent(to, k -> ConcurrentHashMap.newKeySet())
+                .add(kind);
+    }
+
+    /** Forget the references made by a class other than its inheritance,
+      * before it is type checked again
+      * @param from the class
+      * */
+    public void clearReferences(String from) {
+        var targets = edges.get(from);
+        if (targets == null) {
+            return;
+        }
+        for (var it = targets.entrySet().iterator(); it.hasNext();) {
+            var kinds = it.next().getValue();
+            kinds.retainAll(EnumSet.of(Kind.INHERITS));
+            if (kinds.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Forget all references made by a class that no longer exists
+      * (references to it are kept)
+      * @param from the class
+      * */
+    public void removeClass(String from) {
+        edges.remove(from);
+    }
+
+    /** Get the classes a class refers to
+      * @param from the class
+      * @return unmodifiable map from referenced class to the kinds of reference
+      * */
+    public Map<String, Set<Kind>> getDependencies(String from) {
+        var targets = edges.get(from);
+        return targets == null ? Collections.<String, Set<Kind>>emptyMap()
+                : Collections.unmodifiableMap(targets);
+    }
+
+    /** Get the classes that refer to a class
+      * @param to the class
+      * @return names of the classes with an edge to it, sorted
+      * */
+    public Set<String> getDependents(String to) {
+        Set<String> dependents = new TreeSet<String>();
+        for (var entry : edges.entrySet()) {
+            if (entry.getValue().containsKey(to)) {
+                dependents.add(entry.getKey());
+            }
+        }
+        return dependents;
+    }
+
+    /** Find the classes to check again after the member signatures of some
+      * classes changed: the changed classes, all their subclasses (which
+      * inherit the changed members), and every class that refers to any
+      * of those
+      * @param changed classes whose member signatures changed
+      * @return the affected classes, sorted
+      * */
+    public Set<String> affectedBy(Collection<String> changed) {
+        // reverse the edges once
+        Map<String, List<String>> subclasses = new HashMap<String, List<String>>();
+        Map<String, List<String>> referrers = new HashMap<String, List<String>>();
+        for (var entry : edges.entrySet()) {
+            for (var target : entry.getValue().entrySet()) {
+                var kinds = target.getValue();
+                if (kinds.contains(Kind.INHERITS)) {
+                    subclasses.computeIfAbsent(target.getKey(), k -> new ArrayList<String>())
+                            .add(entry.getKey());
+                }
+                referrers.computeIfAbsent(target.getKey(), k -> new ArrayList<String>())
+                        .add(entry.getKey());
+            }
+        }
+
+        Set<String> changedClosure = new HashSet<String>();
+        Deque<String> work = new ArrayDeque<String>(changed);
+        while (!work.isEmpty()) {
+            String name = work.pop();
+            if (changedClosure.add(name)) {
+                work.addAll(subclasses.getOrDefault(name, Collections.<String>emptyList()));
+            }
+        }
+        Set<String> affected = new TreeSet<String>(changedClosure);
+        for (String name : changedClosure) {
+            affected.addAll(referrers.getOrDefault(name, Collections.<String>emptyList()));
+        }
+        return affected;
+    }
+}
@@ -0,0 +1,195 @@
+package semant;
+
+import util.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/** Error handler for the analysis phases that any number of threads can
+  * register errors with at the same time without locking. Messages given
+  * as a format string and arguments are only formatted when the errors are
+  * reported, and reporting sorts them by file, line and message so the
+  * output does not depend on how the work was scheduled. Once the optional
+  * error cap is reached further errors are dropped and the sink is marked
+  * cancelled, which the analysis checks to skip the remaining work.
+  * */
+public class DiagnosticSink extends ErrorHandler {
+    /** One registered error */
+    public static class Diagnostic {
+        private int type;
+        private String filename;
+        private int lineNum;
+        private String format;
+        private Object[] args;
+        private String message;
+
+        public Diagnostic(int type, String filename, int lineNum, String format, Object[] args) {
+            this.type = type;
+            this.filename = filename;
+            this.lineNum = lineNum;
+            this.format = format;
+            this.args = args;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /** @return name of the file, or null for errors not tied to a file */
+        public String getFilename() {
+            return filename;
+        }
+
+        public int getLineNum() {
+            return lineNum;
+        }
+
+        public String getMessage() {
+            if (message == null) {
+                message = args.length == 0 ? format : String.format(format, args);
+            }
+            return message;
+        }
+    }
+
+    /** Report order: errors without a file first, then by file, line and message */
+    private static final Comparator<Diagnostic> ORDER =
+            Comparator.comparing((Diagnostic d) -> d.filename,
+                    Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                    .thenComparingInt(d -> d.lineNum)
+                    .thenComparing(Diagnostic::getMessage);
+
+    /** Sink that owns the errors (this sink unless it is a scope) */
+    private DiagnosticSink root;
+
+    /** Registered errors, in no particular order (root only) */
+    private Queue<Diagnostic> diagnostics;
+
+    /** Number of errors accepted so far (root only) */
+    private AtomicInteger count;
+
+    /** Maximum number of errors to accept, 0 for no limit (root only) */
+    private volatile int maxErrors;
+
+    /** Set once the error cap has been reached (root only) */
+    private volatile boolean cancelled;
+
+    /** Number of errors registered through this particular sink or scope */
+    private int registered;
+
+    public DiagnosticSink() {
+        this(0);
+    }
+
+    /** DiagnosticSink constructor
+      * @param maxErrors maximum number of errors to accept (0 for no limit)
+      * */
+    public DiagnosticSink(int maxErrors) {
+        this.root = this;
+        this.diagnostics = new ConcurrentLinkedQueue<Diagnostic>();
+        this.count = new AtomicInteger();
+        this.maxErrors = Math.max(0, maxErrors);
+    }
+
+    /** Constructor for a scope of another sink */
+    private DiagnosticSink(DiagnosticSink root) {
+        this.root = root;
+    }
+
+    /** Get a view of this sink for one thread of work. Errors registered
+      * with the scope go to this sink; the scope additionally remembers
+      * whether anything was registered through it.
+      * @return new scope
+      * */
+    public DiagnosticSink scope() {
+        return new DiagnosticSink(root);
+    }
+
+    /** Set the maximum number of errors to accept
+      * @param maxErrors the cap (0 for no limit)
+      * */
+    public void setMaxErrors(int maxErrors) {
+        root.maxErrors = Math.max(0, maxErrors);
+    }
+
+    @Override
+    public void register(int type, String filename, int lineNum, String message) {
+        add(type, filename, lineNum, message, new Object[0]);
+    }
+
+    @Override
+    public void register(int type, String message) {
+        add(type, null, -1, message, new Object[0]);
+    }
+
+    /** Register an error whose message is only formatted if it gets reported
+      * @param type type of error
+      * @param filename name of the file
+      * @param lineNum line number
+      * @param format format string of the message
+      * @param args arguments of the format string
+      * */
+    public void register(int type, String filename, int lineNum, String format, Object... args) {
+        add(type, filename, lineNum, format, args);
+    }
+
+    private void add(int type, String filename, int lineNum, String format, Object[] args) {
+        registered++;
+        int max = root.maxErrors;
+        int n = root.count.incrementAndGet();
+        if (max > 0 && n > max) {
+            return;
+        }
+        root.diagnostics.add(new Diagnostic(type, filename, lineNum, format, args));
+        if (max > 0 && n == max) {
+            root.cancelled = true;
+        }
+    }
+
+    /** Check whether errors were registered through this sink or scope
+      * @return true if there were errors
+      * */
+    @Override
+    public boolean errorsFound() {
+        return this == root ? count.get() > 0 : registered > 0;
+    }
+
+    /** Check whether the error cap has been reached, in which case the
+      * remaining analysis work should be skipped
+      * @return true if cancelled
+      * */
+    public boolean isCancelled() {
+        return root.cancelled;
+    }
+
+    /** Get the number of errors dropped because the error cap was reached
+      * (errors in the work skipped after that are not counted)
+      * @return number of errors registered but not accepted
+      * */
+    public int getDroppedCount() {
+        int max = root.maxErrors;
+        return max > 0 ? Math.max(0, root.count.get() - max) : 0;
+    }
+
+    /** Report the accepted errors, sorted, to another handler
+      * @param target handler that receives the errors
+      * */
+    public void flushTo(ErrorHandler target) {
+        for (Diagnostic d : getDiagnostics()) {
+            if (d.filename == null) {
+                target.register(d.type, d.getMessage());
+            } else {
+                target.register(d.type, d.filename, d.lineNum, d.getMessage());
+            }
+        }
+    }
+
+    /** Get the accepted errors in report order
+      * @return sorted list of the errors
+      * */
+    public List<Diagnostic> getDiagnostics() {
+        List<Diagnostic> sorted = new ArrayList<Diagnostic>(root.diagnostics);
+        sorted.sort(ORDER);
+        return sorted;
+    }
+}
@@ -0,0 +1,340 @@
+package codegenjvm;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Diagnostics server for editor integrations. It analyzes the program
+ * once and keeps the class environments resident. When a file is checked
+ * again and none of its classes changed their member declarations, only
+ * the members whose text changed (as far as the AST shows, line numbers
+ * included) are type checked again, against the resident environments;
+ * any change to a declaration, or a program whose environments have
+ * errors, leads to a full analysis. No code is generated.
+ *
+ * The protocol is line based (UTF-8) on a local port:
+ * <pre>
+ *   CHECK path       re-read a source file of the program and check it
+ *   STOP             shut the server down
+ * </pre>
+ * CHECK is answered with one "ERROR file:line: message" line per error
+ * in that file and a final "DONE n errors, mode, ms" line, where mode is
+ * "full" or "members k" for k members checked again.
+ */
+public class DiagnosticsServer {
+    /** Outcome of checking a file */
+    public static class Report {
+        private List<DiagnosticSink.Diagnostic> diagnostics;
+        private boolean full;
+        private int membersChecked;
+        private double millis;
+
+        Report(List<DiagnosticSink.Diagnostic> diagnostics, boolean full, int membersChecked,
+                double millis) {
+            this.diagnostics = diagnostics;
+            this.full = full;
+            this.membersChecked = membersChecked;
+            this.millis = millis;
+        }
+
+        /** @return the errors in the checked file, in report order */
+        public List<DiagnosticSink.Diagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        /** @return true if the whole program was analyzed again */
+        public boolean isFull() {
+            return full;
+        }
+
+        /** @return number of members type checked again (all of them after a full analysis) */
+        public int getMembersChecked() {
+            return membersChecked;
+        }
+
+        /** @return time taken to check, in ms */
+        public double getMillis() {
+            return millis;
+        }
+    }
+
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Front end used to parse the source files */
+    private ProgramParser parser;
+
+    /** The source files, in command line order */
+    private List<String> files;
+
+    /** Current classes of each source file */
+    private Map<String, List<Class_>> classesByFile = new LinkedHashMap<String, List<Class_>>();
+
+    /** Analyzer holding the resident class environments */
+    private SemanticAnalyzer analyzer;
+
+    /** Errors found while building the environments */
+    private List<DiagnosticSink.Diagnostic> environmentDiagnostics;
+
+    /** Hash of the member declarations of each class */
+    private Map<String, byte[]> declarations = new HashMap<String, byte[]>();
+
+    /** Current members of each class, in order */
+    private Map<String, List<Member>> members = new HashMap<String, List<Member>>();
+
+    /** Hash of each current member, taken right after parsing */
+    private Map<Member, byte[]> memberHashes = new IdentityHashMap<Member, byte[]>();
+
+    /** Type checking errors of each current member */
+    private Map<Member, List<DiagnosticSink.Diagnostic>> memberDiagnostics =
+            new IdentityHashMap<Member, List<DiagnosticSink.Diagnostic>>();
+
+    public DiagnosticsServer(ProgramParser parser, List<String> files, boolean debug) {
+        this.parser = parser;
+        this.files = new ArrayList<String>(files);
+        this.debug = debug;
+    }
+
+    /**
+     * Answer requests on a local port until STOP is received
+     *
+     * @param port local port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 8, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    if (!handle(socket)) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    if (debug) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve one client
+     *
+     * @return false once STOP has been received
+     */
+    private boolean handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("CHECK ")) {
+                try {
+                    Report report = check(line.substring(6));
+                    for (DiagnosticSink.Diagnostic d : report.getDiagnostics()) {
+                        out.println("ERROR " + d.getFilename() + ":" + d.getLineNum() + ": "
+                                + d.getMessage());
+                    }
+                    out.printf("DONE %d errors, %s, %.1f ms%n", report.getDiagnostics().size(),
+                            report.isFull() ? "full" : "members " + report.getMembersChecked(),
+                            report.getMillis());
+                } catch (Exception e) {
+                    out.println("FAILED " + e);
+                }
+            } else if (line.equals("STOP")) {
+                out.println("OK");
+                out.flush();
+                return false;
+            } else if (!line.isEmpty()) {
+                out.println("FAILED unknown command '" + line + "'");
+            }
+            out.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Re-read a source file and check it
+     *
+     * @param file one of the program's source files
+     * @return the errors in that file
+     * @throws Exception if the file cannot be parsed
+     */
+    public synchronized Report check(String file) throws Exception {
+        long start = System.nanoTime();
+        if (!files.contains(file)) {
+            throw new IllegalArgumentException(file + " is not part of the program");
+        }
+        Program parsed = parser.parse(new String[] { file });
+        List<Class_> classes = new ArrayList<Class_>();
+        for (Iterator it = parsed.getClassList().getIterator(); it.hasNext();) {
+            classes.add((Class_) it.next());
+        }
+
+        boolean full = analyzer == null || !environmentDiagnostics.isEmpty();
+        List<Class_> old = classesByFile.getOrDefault(file, Collections.<Class_>emptyList());
+        if (!full) {
+            full = old.size() != classes.size();
+            for (int i = 0; !full && i < classes.size(); i++) {
+                full = !classes.get(i).getName().equals(old.get(i).getName())
+                        || !Arrays.equals(declarationHash(classes.get(i)),
+                                declarations.get(classes.get(i).getName()));
+            }
+        }
+        classesByFile.put(file, classes);
+
+        int checked = 0;
+        if (full) {
+            checked = analyzeAll();
+        } else {
+            // same declarations: swap in the new members, checking those that changed
+            for (Class_ clazz : classes) {
+                List<Member> current = members.get(clazz.getName());
+                List<Member> updated = memberList(clazz);
+                for (int i = 0; i < updated.size(); i++) {
+                    Member member = updated.get(i);
+                    byte[] hash = memberHash(member);
+                    Member previous = current.get(i);
+                    if (Arrays.equals(hash, memberHashes.get(previous))) {
+                        continue;
+                    }
+                    memberHashes.remove(previous);
+                    memberDiagnostics.remove(previous);
+                    memberHashes.put(member, hash);
+                    memberDiagnostics.put(member,
+                            analyzer.typeCheckMembers(clazz.getName(), List.of(member)));
+                    current.set(i, member);
+                    checked++;
+                }
+            }
+        }
+
+        List<DiagnosticSink.Diagnostic> diagnostics = new ArrayList<DiagnosticSink.Diagnostic>();
+        for (DiagnosticSink.Diagnostic d : environmentDiagnostics) {
+            if (file.equals(d.getFilename())) {
+                diagnostics.add(d);
+            }
+        }
+        for (Class_ clazz : classes) {
+            for (Member member : members.getOrDefault(clazz.getName(), Collections.<Member>emptyList())) {
+                diagnostics.addAll(memberDiagnostics.getOrDefault(member,
+                        Collections.<DiagnosticSink.Diagnostic>emptyList()));
+            }
+        }
+        diagnostics.sort(Comparator.comparingInt(DiagnosticSink.Diagnostic::getLineNum)
+                .thenComparing(DiagnosticSink.Diagnostic::getMessage));
+        return new Report(diagnostics, full, checked, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Analyze the whole program again, parsing the files not parsed yet
+     *
+     * @return number of members checked
+     */
+    private int analyzeAll() throws Exception {
+        ClassList classList = new ClassList(0);
+        for (String file : files) {
+            if (!classesByFile.containsKey(file)) {
+                List<Class_> classes = new ArrayList<Class_>();
+                Program parsed = parser.parse(new String[] { file });
+                for (Iterator it = parsed.getClassList().getIterator(); it.hasNext();) {
+                    classes.add((Class_) it.next());
+                }
+                classesByFile.put(file, classes);
+            }
+            for (Class_ clazz : classesByFile.get(file)) {
+                classList.addElement(clazz);
+            }
+        }
+        analyzer = new SemanticAnalyzer(new Program(0, classList), debug);
+        analyzer.buildEnvironment();
+        environmentDiagnostics = analyzer.getDiagnosticSink().getDiagnostics();
+
+        // members that were checked before keep the hash taken when they were parsed
+        // (their expression types are set now, which would change it)
+        Map<Member, byte[]> previousHashes = memberHashes;
+        memberHashes = new IdentityHashMap<Member, byte[]>();
+        declarations.clear();
+        members.clear();
+        memberDiagnostics.clear();
+        int checked = 0;
+        for (ClassTreeNode ctn : analyzer.getClassRegistry().getClasses()) {
+            if (ctn.isBuiltIn()) {
+                continue;
+            }
+            Class_ clazz = ctn.getASTNode();
+            declarations.put(clazz.getName(), declarationHash(clazz));
+            List<Member> current = memberList(clazz);
+            members.put(clazz.getName(), current);
+            boolean poisoned = analyzer.getPoisonedClasses().contains(clazz.getName());
+            for (Member member : current) {
+                byte[] hash = previousHashes.get(member);
+                memberHashes.put(member, hash != null ? hash : memberHash(member));
+                if (!poisoned) {
+                    // (a poisoned class's errors are in the environment errors)
+                    memberDiagnostics.put(member, analyzer.typeCheckMembers(clazz.getName(), List.of(member)));
+                    checked++;
+                }
+            }
+        }
+        return checked;
+    }
+
+    private static List<Member> memberList(Class_ clazz) {
+        List<Member> list = new ArrayList<Member>();
+        for (Iterator it = clazz.getMemberList().getIterator(); it.hasNext();) {
+            list.add((Member) it.next());
+        }
+        return list;
+    }
+
+    /**
+     * Hash what the class environment is built from: the parent and the
+     * kind, name and types of each member, in order
+     */
+    private static byte[] declarationHash(Class_ clazz) {
+        StringBuilder declaration = new StringBuilder();
+        declaration.append(clazz.getParent()).append('\n');
+        for (Member member : memberList(clazz)) {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                declaration.append("field ").append(field.getType()).append(' ').append(field.getName());
+            } else {
+                Method method = (Method) member;
+                declaration.append("method ").append(method.getReturnType()).append(' ')
+                        .append(method.getName());
+                for (Iterator it = method.getFormalList().getIterator(); it.hasNext();) {
+                    declaration.append(' ').append(((Formal) it.next()).getType());
+                }
+            }
+            declaration.append('\n');
+        }
+        return newDigest().digest(declaration.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hash a freshly parsed member, line numbers included (the errors
+     * found in it carry them)
+     */
+    private static byte[] memberHash(Member member) {
+        MessageDigest digest = newDigest();
+        member.accept(new FingerprintVisitor(digest, true));
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package semant;
+
+import ast.*;
+import util.*;
+import java.util.*;
+
+/** Dense field table of one class: every field of the class, inherited
+  * ones included, each in a fixed slot. A class keeps the slots of its
+  * parent and appends its own fields (a field hiding an inherited one of
+  * the same name gets a new slot, as it is a separate field), so a field
+  * keeps its slot in every subclass. Lookups by name answer both
+  * <tt>this.x</tt> and a bare <tt>x</tt> with one hash lookup, and there
+  * is no limit on the number of fields.
+  * */
+public final class FieldTable {
+    /** A field in its slot */
+    public static final class Entry {
+        private final int slot;
+        private final String name;
+        private final Type type;
+        private final String declaringClass;
+
+        Entry(int slot, String name, Type type, String declaringClass) {
+            this.slot = slot;
+            this.name = name;
+            this.type = type;
+            this.declaringClass = declaringClass;
+        }
+
+        /** @return index of the field in the table */
+        public int getSlot() {
+            return slot;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /** @return name of the class declaring the field */
+        public String getDeclaringClass() {
+            return declaringClass;
+        }
+    }
+
+    /** Entries by slot */
+    private final Entry[] slots;
+
+    /** Visible entry of each name (a class's own field hides an inherited one) */
+    private final Map<String, Entry> byName;
+
+    private FieldTable(Entry[] slots) {
+        this.slots = slots;
+        Map<String, Entry> byName = new HashMap<String, Entry>(slots.length * 2);
+        for (Entry entry : slots) {
+            byName.put(entry.getName(), entry);
+        }
+        this.byName = byName;
+    }
+
+    /** Build the tables of all classes of a registry; their variable symbol
+      * tables must be complete
+      * @param registry classes of the program
+      * @return tables by class id
+      * */
+    static FieldTable[] build(ClassRegistry registry) {
+        // ids put parents before their children, so a parent's table is always built first
+        FieldTable[] tables = new FieldTable[registry.size()];
+        for (int id = 0; id < tables.length; id++) {
+            ClassTreeNode ctn = registry.get(id);
+            var parent = ctn.getParent();
+            int parentId = parent == null ? -1 : registry.getId(parent.getName());
+            List<Entry> slots = new ArrayList<Entry>();
+            if (parentId >= 0 && parentId < id) {
+                slots.addAll(Arrays.asList(tables[parentId].slots));
+            }
+            var varSymbolTable = ctn.getVarSymbolTable();
+            Set<String> names = new HashSet<String>();
+            for (Iterator it = ctn.getASTNode().getMemberList().getIterator(); it.hasNext();) {
+                var member = it.next();
+                if (!(member instanceof Field)) {
+                    continue;
+                }
+                Field field = (Field) member;
+                // a rejected field is not the entry in the class's symbol table
+                if (field.getType().equals(varSymbolTable.peek(field.getName()))
+                        && names.add(field.getName())) {
+                    slots.add(new Entry(slots.size(), field.getName(), Type.of(field.getType()),
+                            ctn.getName()));
+                }
+            }
+            tables[id] = new FieldTable(slots.toArray(new Entry[0]));
+        }
+        return tables;
+    }
+
+    /** Find a field by name
+      * @param name name of the field
+      * @return its entry, or null if the class has no such field
+      * */
+    public Entry lookup(String name) {
+        return byName.get(name);
+    }
+
+    /** Get the field in a slot
+      * @param slot the slot
+      * @return its entry
+      * */
+    public Entry get(int slot) {
+        return slots[slot];
+    }
+
+    /** Get the number of slots
+      * @return number of fields, inherited ones included
+      * */
+    public int size() {
+        return slots.length;
+    }
+
+    /** Get all entries in slot order
+      * @return unmodifiable list of the entries
+      * */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+}
@@ -0,0 +1,411 @@
+package codegenjvm;
+
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+
+import ast.*;
+import visitor.*;
+
+/**
+ * Visitor that hashes a type-checked class AST: every node kind, name,
+ * type, constant and the types the analysis annotated expressions with,
+ * but (unless asked for) not line numbers, which the generated code does
+ * not depend on. It also collects the names of all classes the code
+ * refers to.
+ */
+public class FingerprintVisitor extends Visitor {
+    /** Hash being computed */
+    private MessageDigest digest;
+
+    /** Names of the classes referred to (array types without the brackets) */
+    private Set<String> referencedClasses = new TreeSet<String>();
+
+    /** Whether line numbers are part of the hash */
+    private boolean lineNumbers;
+
+    public FingerprintVisitor(MessageDigest digest) {
+        this(digest, false);
+    }
+
+    /**
+     * FingerprintVisitor constructor
+     *
+     * @param digest      hash to add the visited nodes to
+     * @param lineNumbers whether to include the line number of every node
+     */
+    public FingerprintVisitor(MessageDigest digest, boolean lineNumbers) {
+        this.digest = digest;
+        this.lineNumbers = lineNumbers;
+    }
+
+    /**
+     * Get the classes referred to by the nodes visited so far
+     *
+     * @return sorted set of class names (may include primitive type names)
+     */
+    public Set<String> getReferencedClasses() {
+        return referencedClasses;
+    }
+
+    /** Add a string (or null) to the hash */
+    private void put(String s) {
+        if (s == null) {
+            putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void putInt(int n) {
+        digest.update((byte) (n >>> 24));
+        digest.update((byte) (n >>> 16));
+        digest.update((byte) (n >>> 8));
+        digest.update((byte) n);
+    }
+
+    /** Add a type name to the hash and remember the class it names */
+    private void putType(String type) {
+        put(type);
+        if (type != null) {
+            referencedClasses.add(type.endsWith("[]") ? type.substring(0, type.length() - 2) : type);
+        }
+    }
+
+    /** Start a node: its kind and, if requested, its line number */
+    private void start(String kind, ASTNode node) {
+        put(kind);
+        if (lineNumbers) {
+            putInt(node.getLineNum());
+        }
+    }
+
+    /** Start an expression: its kind and the type the analysis gave it */
+    private void expr(String kind, Expr node) {
+        start(kind, node);
+        putType(node.getExprType());
+    }
+
+    /** Visit an optional child */
+    private void child(ASTNode node) {
+        if (node == null) {
+            put(null);
+        } else {
+            node.accept(this);
+        }
+    }
+
+    /** Visit the elements of a list node */
+    private void list(String kind, ListNode node) {
+        start(kind, node);
+        putInt(node.getSize());
+        for (Iterator it = node.getIterator(); it.hasNext();) {
+            ((ASTNode) it.next()).accept(this);
+        }
+    }
+
+    private void binary(String kind, BinaryExpr node) {
+        expr(kind, node);
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+    }
+
+    private void unary(String kind, UnaryExpr node) {
+        expr(kind, node);
+        node.getExpr().accept(this);
+    }
+
+    public Object visit(Program node) {
+        node.getClassList().accept(this);
+        return null;
+    }
+
+    public Object visit(Class_ node) {
+        start("class", node);
+        put(node.getFilename());
+        put(node.getName());
+        putType(node.getParent());
+        node.getMemberList().accept(this);
+        return null;
+    }
+
+    public Object visit(Field node) {
+        start("field", node);
+        putType(node.getType());
+        put(node.getName());
+        child(node.getInit());
+        return null;
+    }
+
+    public Object visit(Method node) {
+        start("method", node);
+        putType(node.getReturnType());
+        put(node.getName());
+        node.getFormalList().accept(this);
+        node.getStmtList().accept(this);
+        return null;
+    }
+
+    public Object visit(Formal node) {
+        start("formal", node);
+        putType(node.getType());
+        put(node.getName());
+        return null;
+    }
+
+    public Object visit(DeclStmt node) {
+        start("decl", node);
+        putType(node.getType());
+        put(node.getName());
+        child(node.getInit());
+        return null;
+    }
+
+    public Object visit(ExprStmt node) {
+        start("expr", node);
+        node.getExpr().accept(this);
+        return null;
+    }
+
+    public Object visit(IfStmt node) {
+        start("if", node);
+        node.getPredExpr().accept(this);
+        node.getThenStmt().accept(this);
+        child(node.getElseStmt());
+        return null;
+    }
+
+    public Object visit(WhileStmt node) {
+        start("while", node);
+        node.getPredExpr().accept(this);
+        node.getBodyStmt().accept(this);
+        return null;
+    }
+
+    public Object visit(ForStmt node) {
+        start("for", node);
+        child(node.getInitExpr());
+        child(node.getPredExpr());
+        child(node.getUpdateExpr());
+        node.getBodyStmt().accept(this);
+        return null;
+    }
+
+    public Object visit(BreakStmt node) {
+        start("break", node);
+        return null;
+    }
+
+    public Object visit(BlockStmt node) {
+        start("block", node);
+        node.getStmtList().accept(this);
+        return null;
+    }
+
+    public Object visit(ReturnStmt node) {
+        start("return", node);
+        child(node.getExpr());
+        return null;
+    }
+
+    public Object visit(DispatchExpr node) {
+        expr("dispatch", node);
+        child(node.getRefExpr());
+        put(node.getMethodName());
+        node.getActualList().accept(this);
+        return null;
+    }
+
+    public Object visit(NewExpr node) {
+        expr("new", node);
+        putType(node.getType());
+        return null;
+    }
+
+    public Object visit(NewArrayExpr node) {
+        expr("newarray", node);
+        putType(node.getType());
+        node.getSize().accept(this);
+        return null;
+    }
+
+    public Object visit(InstanceofExpr node) {
+        expr("instanceof", node);
+        node.getExpr().accept(this);
+        putType(node.getType());
+        putInt(node.getUpCheck() ? 1 : 0);
+        return null;
+    }
+
+    public Object visit(CastExpr node) {
+        expr("cast", node);
+        putType(node.getType());
+        node.getExpr().accept(this);
+        putInt(node.getUpCast() ? 1 : 0);
+        return null;
+    }
+
+    public Object visit(AssignExpr node) {
+        expr("assign", node);
+        put(node.getRefName());
+        put(node.getName());
+        node.getExpr().accept(this);
+        return null;
+    }
+
+    public Object visit(ArrayAssignExpr node) {
+        expr("arrayassign", node);
+        put(node.getRefName());
+        put(node.getName());
+        node.getIndex().accept(this);
+        node.getExpr().accept(this);
+        return null;
+    }
+
+    public Object visit(VarExpr node) {
+        expr("var", node);
+        child(node.getRef());
+        put(node.getName());
+        return null;
+    }
+
+    public Object visit(ArrayExpr node) {
+        expr("array", node);
+        child(node.getRef());
+        put(node.getName());
+        node.getIndex().accept(this);
+        return null;
+    }
+
+    public Object visit(BinaryCompEqExpr node) {
+        binary("BinaryCompEqExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryCompNeExpr node) {
+        binary("BinaryCompNeExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLtExpr node) {
+        binary("BinaryCompLtExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryCompLeqExpr node) {
+        binary("BinaryCompLeqExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGtExpr node) {
+        binary("BinaryCompGtExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryCompGeqExpr node) {
+        binary("BinaryCompGeqExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryArithPlusExpr node) {
+        binary("BinaryArithPlusExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryArithMinusExpr node) {
+        binary("BinaryArithMinusExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryArithTimesExpr node) {
+        binary("BinaryArithTimesExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryArithDivideExpr node) {
+        binary("BinaryArithDivideExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryArithModulusExpr node) {
+        binary("BinaryArithModulusExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicAndExpr node) {
+        binary("BinaryLogicAndExpr", node);
+        return null;
+    }
+
+    public Object visit(BinaryLogicOrExpr node) {
+        binary("BinaryLogicOrExpr", node);
+        return null;
+    }
+
+    public Object visit(UnaryNegExpr node) {
+        unary("UnaryNegExpr", node);
+        return null;
+    }
+
+    public Object visit(UnaryNotExpr node) {
+        unary("UnaryNotExpr", node);
+        return null;
+    }
+
+    public Object visit(UnaryIncrExpr node) {
+        unary("UnaryIncrExpr", node);
+        putInt(node.isPostfix() ? 1 : 0);
+        return null;
+    }
+
+    public Object visit(UnaryDecrExpr node) {
+        unary("UnaryDecrExpr", node);
+        putInt(node.isPostfix() ? 1 : 0);
+        return null;
+    }
+
+    public Object visit(ConstIntExpr node) {
+        expr("int", node);
+        put(node.getConstant());
+        return null;
+    }
+
+    public Object visit(ConstBooleanExpr node) {
+        expr("boolean", node);
+        put(node.getConstant());
+        return null;
+    }
+
+    public Object visit(ConstStringExpr node) {
+        expr("string", node);
+        put(node.getConstant());
+        return null;
+    }
+
+    public Object visit(ClassList node) {
+        list("ClassList", node);
+        return null;
+    }
+
+    public Object visit(MemberList node) {
+        list("MemberList", node);
+        return null;
+    }
+
+    public Object visit(FormalList node) {
+        list("FormalList", node);
+        return null;
+    }
+
+    public Object visit(StmtList node) {
+        list("StmtList", node);
+        return null;
+    }
+
+    public Object visit(ExprList node) {
+        list("ExprList", node);
+        return null;
+    }
+}
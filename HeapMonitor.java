@@ -0,0 +1,81 @@
+package util;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/** Measures the heap used by each phase of a compile. A driver calls
+  * <tt>phase()</tt> as each phase starts and <tt>finish()</tt> at the end;
+  * for every phase the report gives the peak heap in use while it ran
+  * (garbage included) and the live heap once it was done, measured after
+  * a full collection.
+  * */
+public class HeapMonitor {
+    /** Figures of a finished phase */
+    private static class Phase {
+        String name;
+        long peak;
+        long live;
+        double millis;
+    }
+
+    /** Finished phases, in order */
+    private List<Phase> phases = new ArrayList<Phase>();
+
+    /** Name of the running phase (null if none) */
+    private String current;
+
+    /** When the running phase started */
+    private long start;
+
+    /** Start a phase, ending the running one
+      * @param name name of the phase
+      * */
+    public void phase(String name) {
+        finish();
+        current = name;
+        start = System.nanoTime();
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /** End the running phase, if any
+      * */
+    public void finish() {
+        if (current == null) {
+            return;
+        }
+        Phase phase = new Phase();
+        phase.name = current;
+        phase.millis = (System.nanoTime() - start) / 1e6;
+        // pools peak at different times, so their sum is an upper bound
+        for (MemoryPoolMXBean pool : heapPools()) {
+            phase.peak += pool.getPeakUsage().getUsed();
+        }
+        System.gc();
+        phase.live = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        phases.add(phase);
+        current = null;
+    }
+
+    /** Print one line per finished phase
+      * @param out where to print
+      * */
+    public void report(PrintStream out) {
+        for (Phase phase : phases) {
+            out.printf("%-10s peak %6d MB, live after %6d MB, %8.1f ms%n", phase.name,
+                    phase.peak >> 20, phase.live >> 20, phase.millis);
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+}
@@ -1,32 +1,234 @@
 package codegenjvm;
 
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
+import ast.*;
+import semant.*;
 import util.*;
 
 public class JVMCodeGenerator {
+    /** Number of generated classes that may wait for the writer in low-memory mode */
+    private static final int LOW_MEMORY_QUEUE_CAPACITY = 8;
+
     /** Root of the class hierarchy tree */
     private ClassTreeNode root;
 
+    /** Method table of each class by name, for the signatures of the methods called */
+    private Function<String, MethodTable> methodTables;
+
     /** Boolean indicating whether debugging is enabled */
     private boolean debug = false;
 
+    /** Number of classes generated concurrently (1 = sequential) */
+    private int jobs = 1;
+
+    /** Directory the .j files are written to (the working directory by default) */
+    private Path outputDir = Paths.get("");
+
+    /** Whether the .j files are forced to disk before generate() returns */
+    private boolean fsync = false;
+
+    /** If not null, classes whose fingerprint is unchanged are not generated again */
+    private BuildCache buildCache;
+
+    /** Whether code generation keeps as little generated code in memory as it can */
+    private boolean lowMemory = false;
+
     public JVMCodeGenerator(ClassTreeNode root, boolean debug) {
+        this(root, debug, 1);
+    }
+
+    /**
+     * Generate an analyzed class tree; the method tables are rebuilt from
+     * the tree's symbol tables
+     */
+    public JVMCodeGenerator(ClassTreeNode root, boolean debug, int jobs) {
+        this(root, MethodTable.build(root)::get, debug, jobs);
+    }
+
+    public JVMCodeGenerator(SemanticAnalyzer analyzer, boolean debug) {
+        this(analyzer, debug, 1);
+    }
+
+    /**
+     * Generate the program of an analyzer, sharing its method tables
+     */
+    public JVMCodeGenerator(SemanticAnalyzer analyzer, boolean debug, int jobs) {
+        this(analyzer.getRoot(), analyzer::getMethodTable, debug, jobs);
+    }
+
+    private JVMCodeGenerator(ClassTreeNode root, Function<String, MethodTable> methodTables,
+            boolean debug, int jobs) {
         this.root = root;
+        this.methodTables = methodTables;
         this.debug = debug;
+        this.jobs = Math.max(1, jobs);
+    }
+
+    public void setOutputDirectory(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public void setBuildCache(BuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
+    /**
+     * Keep the memory of code generation small: only a few generated
+     * classes may wait for the writer, and every class is generated by a
+     * fresh visitor, so no buffers grown for the largest class are kept.
+     * The AST is left as it is, so the program can be generated again.
+     *
+     * @param lowMemory whether to run in low-memory mode
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
     }
 
     public void generate() {
-        CodeGenVisitor codeGenVisitor = new CodeGenVisitor();
+        List<Class_> classes = userClasses();
+        Map<String, String> fingerprints = null;
+        if (buildCache != null) {
+            fingerprints = buildCache.fingerprint(classes, root.getClassMap());
+            List<Class_> stale = new ArrayList<Class_>();
+            for (Class_ clazz : classes) {
+                if (!buildCache.isUpToDate(clazz.getName(), fingerprints.get(clazz.getName()),
+                        outputDir.resolve(clazz.getName() + ".j"))) {
+                    stale.add(clazz);
+                }
+            }
+            classes = stale;
+        }
+
+        // files are written on the writer's thread while the next classes are generated
+        ClassFileWriter writer = new ClassFileWriter(outputDir,
+                lowMemory ? LOW_MEMORY_QUEUE_CAPACITY : ClassFileWriter.DEFAULT_QUEUE_CAPACITY, fsync);
+        boolean written = false;
+        try {
+            generate(classes, writer::submit);
+        } finally {
+            try {
+                writer.close();
+                written = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (buildCache != null && written) {
+            try {
+                for (Class_ clazz : classes) {
+                    buildCache.record(clazz.getName(), fingerprints.get(clazz.getName()));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (debug) {
+                System.err.println(buildCache);
+            }
+        }
+    }
+
+    /**
+     * Generate every class without writing anything
+     *
+     * @return generated code by class name, in breadth-first order of the class tree
+     */
+    public Map<String, String> generateSources() {
+        Map<String, String> generated = new ConcurrentHashMap<String, String>();
+        generate(userClasses(), generated::put);
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        for (Class_ clazz : userClasses()) {
+            sources.put(clazz.getName(), generated.get(clazz.getName()));
+        }
+        return sources;
+    }
+
+    /**
+     * Generate the given classes, handing each one's code to a consumer
+     * (which must be thread-safe when classes are generated in parallel)
+     */
+    private void generate(List<Class_> classes, BiConsumer<String, String> output) {
+        if (jobs == 1 || classes.size() < 2) {
+            CodeGenVisitor codeGenVisitor = new CodeGenVisitor(methodTables);
+            for (Class_ clazz : classes) {
+                if (lowMemory) {
+                    // the last visitor's buffers are as big as the biggest class so far
+                    codeGenVisitor = new CodeGenVisitor(methodTables);
+                }
+                output.accept(clazz.getName(), codeGenVisitor.generateSource(clazz));
+            }
+        } else {
+            generateParallel(classes, output);
+        }
+    }
+
+    /**
+     * Generate every class on a fork-join pool. Each class gets its own
+     * visitor, so the per-class buffers and counters are never shared, and
+     * each class goes to its own .j file, so the output is the same as in
+     * sequential mode. The biggest classes are submitted first so that a
+     * large class does not end up running alone at the end.
+     */
+    private void generateParallel(List<Class_> classes, BiConsumer<String, String> output) {
+        List<Class_> bySize = new ArrayList<Class_>(classes);
+        bySize.sort(Comparator.comparingInt(JVMCodeGenerator::estimateSize).reversed());
+
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (Class_ clazz : bySize) {
+                tasks.add(pool.submit(() -> {
+                    output.accept(clazz.getName(), new CodeGenVisitor(methodTables).generateSource(clazz));
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * List the user-defined classes in breadth-first order of the class tree
+     */
+    private List<Class_> userClasses() {
+        List<Class_> classes = new ArrayList<Class_>();
         LinkedList<ClassTreeNode> temp = new LinkedList<ClassTreeNode>();
         temp.addFirst(root);
         while (!temp.isEmpty()) {
             var curr = temp.removeFirst();
-            if (!curr.isBuiltIn()) codeGenVisitor.visit(curr.getASTNode());
+            if (!curr.isBuiltIn()) classes.add(curr.getASTNode());
             var iter = curr.getChildrenList();
             while (iter.hasNext()) {
                 temp.addLast(iter.next());
             }
         }
+        return classes;
+    }
+
+    /**
+     * Rough estimate of the work needed to generate a class: one unit per
+     * member plus one per top-level statement of each method body
+     */
+    static int estimateSize(Class_ clazz) {
+        int size = 0;
+        for (Iterator it = clazz.getMemberList().getIterator(); it.hasNext();) {
+            var member = it.next();
+            size++;
+            if (member instanceof Method) {
+                size += ((Method) member).getStmtList().getSize();
+            }
+        }
+        return size;
     }
 }
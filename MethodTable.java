@@ -0,0 +1,177 @@
+package semant;
+
+import ast.*;
+import util.*;
+import java.util.*;
+
+/** Flattened method table of one class: every method the class has,
+  * inherited ones included, each in a fixed slot. A class keeps the slots
+  * of its parent (an override takes over the slot of the method it
+  * overrides) and appends its new methods, so the layout is also a vtable.
+  * Tables are built once the class environments are complete and are
+  * never modified, so resolving a dispatch is a single hash lookup
+  * instead of a walk up the chain of method symbol tables.
+  * */
+public final class MethodTable {
+    /** A method in its slot */
+    public static final class Entry {
+        private final int slot;
+        private final Method method;
+        private final String declaringClass;
+        private final Signature signature;
+
+        Entry(int slot, Method method, String declaringClass) {
+            this.slot = slot;
+            this.method = method;
+            this.declaringClass = declaringClass;
+            this.signature = Signature.of(method);
+        }
+
+        /** @return index of the method in the table */
+        public int getSlot() {
+            return slot;
+        }
+
+        /** @return the method's AST node */
+        public Method getMethod() {
+            return method;
+        }
+
+        /** @return name of the class whose declaration fills the slot */
+        public String getDeclaringClass() {
+            return declaringClass;
+        }
+
+        /** @return the method's signature, shared by all classes inheriting it */
+        public Signature getSignature() {
+            return signature;
+        }
+    }
+
+    /** Entries by slot */
+    private final Entry[] slots;
+
+    /** Entries by method name */
+    private final Map<String, Entry> byName;
+
+    private MethodTable(Entry[] slots) {
+        this.slots = slots;
+        Map<String, Entry> byName = new HashMap<String, Entry>(slots.length * 2);
+        for (Entry entry : slots) {
+            byName.put(entry.getMethod().getName(), entry);
+        }
+        this.byName = byName;
+    }
+
+    /** Build the tables of all classes of a registry; their method symbol
+      * tables must be complete. The built-in classes get the tables shared
+      * by the whole JVM (see <tt>BuiltinClasses</tt>).
+      * @param registry classes of the program
+      * @return tables by class id
+      * */
+    static MethodTable[] build(ClassRegistry registry) {
+        // ids put parents before their children, so a parent's table is always built first
+        MethodTable[] tables = new MethodTable[registry.size()];
+        for (int id = 0; id < tables.length; id++) {
+            ClassTreeNode ctn = registry.get(id);
+            if (ctn.getASTNode() == BuiltinClasses.getASTNode(ctn.getName())) {
+                tables[id] = BuiltinClasses.getMethodTable(ctn.getName());
+                continue;
+            }
+            var parent = ctn.getParent();
+            int parentId = parent == null ? -1 : registry.getId(parent.getName());
+            var methodSymbolTable = ctn.getMethodSymbolTable();
+            List<Method> methods = new ArrayList<Method>();
+            for (Iterator it = ctn.getASTNode().getMemberList().getIterator(); it.hasNext();) {
+                var member = it.next();
+                // a method rejected by ClassEnvVisitor is not the entry in the symbol table
+                if (member instanceof Method
+                        && methodSymbolTable.peek(((Method) member).getName()) == member) {
+                    methods.add((Method) member);
+                }
+            }
+            tables[id] = derive(parentId >= 0 && parentId < id ? tables[parentId] : null,
+                    ctn.getName(), methods);
+        }
+        return tables;
+    }
+
+    /** Build the tables of all classes of an analyzed class tree, for code
+      * generators that are handed only the tree
+      * @param root root of the class tree (its environments must be complete)
+      * @return tables by class name
+      * */
+    public static Map<String, MethodTable> build(ClassTreeNode root) {
+        List<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+        classes.add(root);
+        for (int i = 0; i < classes.size(); i++) {
+            for (Iterator<ClassTreeNode> it = classes.get(i).getChildrenList(); it.hasNext();) {
+                classes.add(it.next());
+            }
+        }
+        ClassRegistry registry = ClassRegistry.freeze(root.getClassMap(), classes);
+        MethodTable[] tables = build(registry);
+        Map<String, MethodTable> byName = new HashMap<String, MethodTable>(tables.length * 2);
+        for (int id = 0; id < tables.length; id++) {
+            byName.put(registry.get(id).getName(), tables[id]);
+        }
+        return byName;
+    }
+
+    /** Build the table of a class from its parent's table
+      * @param parent table of the parent (null for a root class)
+      * @param className name of the class
+      * @param methods the class's own (accepted) methods, in declaration order
+      * @return the table
+      * */
+    static MethodTable derive(MethodTable parent, String className, Collection<Method> methods) {
+        List<Entry> slots = new ArrayList<Entry>();
+        Map<String, Integer> slotOf = new HashMap<String, Integer>();
+        if (parent != null) {
+            for (Entry entry : parent.slots) {
+                slotOf.put(entry.getMethod().getName(), slots.size());
+                slots.add(entry);
+            }
+        }
+        for (Method method : methods) {
+            Integer slot = slotOf.get(method.getName());
+            if (slot == null) {
+                slotOf.put(method.getName(), slots.size());
+                slots.add(new Entry(slots.size(), method, className));
+            } else {
+                slots.set(slot, new Entry(slot, method, className));
+            }
+        }
+        return new MethodTable(slots.toArray(new Entry[0]));
+    }
+
+    /** Find a method by name
+      * @param name name of the method
+      * @return its entry, or null if the class has no such method
+      * */
+    public Entry lookup(String name) {
+        return byName.get(name);
+    }
+
+    /** Get the method in a slot
+      * @param slot the slot
+      * @return its entry
+      * */
+    public Entry get(int slot) {
+        return slots[slot];
+    }
+
+    /** Get the number of slots
+      * @return number of methods, inherited ones included
+      * */
+    public int size() {
+        return slots.length;
+    }
+
+    /** Get all entries in slot order
+      * @return unmodifiable list of the entries
+      * */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+}
@@ -0,0 +1,86 @@
+package semant;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/** Runs the tasks of one analysis phase, either one after the other or
+  * on a fork-join pool. Every task registers its errors through its own
+  * scope of the phase's <tt>DiagnosticSink</tt>; tasks that have not
+  * started yet are skipped once the sink has been cancelled.
+  * */
+class PhaseRunner {
+    /** Number of worker threads (1 = run everything on the calling thread) */
+    private int jobs;
+
+    /** Pool shared by all phases, created on first use */
+    private ForkJoinPool pool;
+
+    PhaseRunner(int jobs) {
+        this.jobs = Math.max(1, jobs);
+    }
+
+    /** Check whether tasks are run on more than one thread
+      * @return true if running in parallel
+      * */
+    boolean isParallel() {
+        return jobs > 1;
+    }
+
+    /** Run a list of tasks and wait for all of them to finish
+      * @param tasks tasks, each given the error sink it must register errors with
+      * @param sink sink that collects the errors of all tasks
+      * */
+    void run(List<Consumer<DiagnosticSink>> tasks, DiagnosticSink sink) {
+        run(tasks, sink, null);
+    }
+
+    /** Run a list of tasks and wait for all of them to finish
+      * @param tasks tasks, each given the error sink it must register errors with
+      * @param sink sink that collects the errors of all tasks
+      * @param onTaskDone if not null, called on the worker thread as soon as a task
+      *        finishes with the task's index and whether it registered no errors
+      * */
+    void run(List<Consumer<DiagnosticSink>> tasks, DiagnosticSink sink,
+            BiConsumer<Integer, Boolean> onTaskDone) {
+        if (!isParallel() || tasks.size() < 2) {
+            for (int i = 0; i < tasks.size(); i++) {
+                runTask(tasks.get(i), i, sink, onTaskDone);
+            }
+            return;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(jobs);
+        }
+        List<ForkJoinTask<?>> futures = new ArrayList<ForkJoinTask<?>>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Consumer<DiagnosticSink> task = tasks.get(i);
+            int index = i;
+            futures.add(pool.submit(() -> runTask(task, index, sink, onTaskDone)));
+        }
+        for (ForkJoinTask<?> future : futures) {
+            future.join();
+        }
+    }
+
+    /** Run one task unless the sink has been cancelled */
+    private void runTask(Consumer<DiagnosticSink> task, int index, DiagnosticSink sink,
+            BiConsumer<Integer, Boolean> onTaskDone) {
+        if (sink.isCancelled()) {
+            return;
+        }
+        DiagnosticSink scope = sink.scope();
+        task.accept(scope);
+        if (onTaskDone != null) {
+            onTaskDone.accept(index, !scope.errorsFound());
+        }
+    }
+
+    /** Release the worker threads */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
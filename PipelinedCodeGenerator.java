@@ -0,0 +1,212 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Runs semantic analysis and code generation as a pipeline: each class is
+ * generated as soon as the analyzer reports that it and its ancestors have
+ * type checked cleanly, while the rest of the program is still being
+ * checked. Generated code is kept in memory and only written out once the
+ * whole analysis has succeeded, so a program with errors leaves no .j
+ * files behind, just as in the non-pipelined driver.
+ */
+public class PipelinedCodeGenerator implements ClassReadyListener {
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Threads used for code generation */
+    private ExecutorService executor;
+
+    /** Analyzer of the running program */
+    private SemanticAnalyzer analyzer;
+
+    /** Code generation tasks started so far */
+    private Queue<Future<?>> tasks = new ConcurrentLinkedQueue<Future<?>>();
+
+    /** Generated code, by class name */
+    private Map<String, String> sources = new ConcurrentHashMap<String, String>();
+
+    /** Timing of the last run */
+    private PipelineMetrics metrics;
+
+    /** Directory the .j files are written to (the working directory by default) */
+    private Path outputDir = Paths.get("");
+
+    /** Whether the .j files are forced to disk before run() returns */
+    private boolean fsync = false;
+
+    public PipelinedCodeGenerator(boolean debug, int jobs) {
+        this.debug = debug;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+        this.metrics = new PipelineMetrics(Math.max(1, jobs));
+    }
+
+    public void setOutputDirectory(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * Analyze a program and generate code for it
+     *
+     * @param analyzer analyzer for the program
+     * @return root of the class hierarchy tree
+     */
+    public ClassTreeNode run(SemanticAnalyzer analyzer) {
+        metrics.start();
+        this.analyzer = analyzer;
+        analyzer.setClassReadyListener(this);
+        ClassTreeNode root;
+        try {
+            root = analyzer.analyze();
+        } finally {
+            analyzer.setClassReadyListener(null);
+            metrics.analysisDone();
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        ClassFileWriter writer =
+                new ClassFileWriter(outputDir, ClassFileWriter.DEFAULT_QUEUE_CAPACITY, fsync);
+        try {
+            for (var entry : sources.entrySet()) {
+                writer.submit(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        metrics.finished();
+        if (debug) {
+            System.err.println(metrics);
+        }
+        return root;
+    }
+
+    /**
+     * Start generating a class that has passed type checking
+     *
+     * @param ctn class tree node of the class
+     */
+    public void classReady(ClassTreeNode ctn) {
+        Class_ clazz = ctn.getASTNode();
+        tasks.add(executor.submit(() -> {
+            long start = System.nanoTime();
+            sources.put(clazz.getName(), new CodeGenVisitor(analyzer).generateSource(clazz));
+            metrics.classGenerated(start, System.nanoTime());
+        }));
+    }
+
+    /**
+     * Get the timing of the last run
+     *
+     * @return pipeline metrics
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Wall-clock measurements for a pipelined run. Code generation time
+     * that falls before the end of analysis overlaps with analysis; in the
+     * non-pipelined driver it would have come after it, so it is (spread
+     * over the code generation threads) the time the pipeline saves.
+     */
+    public static class PipelineMetrics {
+        private int threads;
+        private long start;
+        private volatile long analysisEnd;
+        private long end;
+        private AtomicLong codegenNanos = new AtomicLong();
+        private AtomicLong overlapNanos = new AtomicLong();
+        private AtomicInteger classes = new AtomicInteger();
+
+        PipelineMetrics(int threads) {
+            this.threads = threads;
+        }
+
+        void start() {
+            start = System.nanoTime();
+            analysisEnd = 0;
+        }
+
+        void analysisDone() {
+            analysisEnd = System.nanoTime();
+        }
+
+        void classGenerated(long taskStart, long taskEnd) {
+            classes.incrementAndGet();
+            codegenNanos.addAndGet(taskEnd - taskStart);
+            // analysisEnd is still 0 while the analysis is running
+            long cutoff = analysisEnd == 0 ? taskEnd : Math.min(taskEnd, analysisEnd);
+            if (cutoff > taskStart) {
+                overlapNanos.addAndGet(cutoff - taskStart);
+            }
+        }
+
+        void finished() {
+            end = System.nanoTime();
+        }
+
+        /** @return wall-clock time of the analysis in ms */
+        public double getAnalysisMillis() {
+            return (analysisEnd - start) / 1e6;
+        }
+
+        /** @return wall-clock time from the end of analysis to the last file written, in ms */
+        public double getTailMillis() {
+            return (end - analysisEnd) / 1e6;
+        }
+
+        /** @return total wall-clock time in ms */
+        public double getTotalMillis() {
+            return (end - start) / 1e6;
+        }
+
+        /** @return code generation time summed over all threads in ms */
+        public double getCodegenMillis() {
+            return codegenNanos.get() / 1e6;
+        }
+
+        /** @return code generation time spent while analysis was still running, in ms */
+        public double getOverlapMillis() {
+            return overlapNanos.get() / 1e6;
+        }
+
+        /** @return estimated wall-clock time saved compared to running the phases one after the other, in ms */
+        public double getSavedMillis() {
+            return getOverlapMillis() / threads;
+        }
+
+        public String toString() {
+            return String.format(
+                    "pipeline: %d classes, analysis %.1f ms, codegen %.1f ms (%.1f ms overlapped), "
+                            + "tail %.1f ms, total %.1f ms, saved ~%.1f ms",
+                    classes.get(), getAnalysisMillis(), getCodegenMillis(), getOverlapMillis(),
+                    getTailMillis(), getTotalMillis(), getSavedMillis());
+        }
+    }
+}
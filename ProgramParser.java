@@ -0,0 +1,17 @@
+package util;
+
+import ast.*;
+
+/** Front end used by drivers that have to (re)parse source files on their
+  * own, e.g. the worker processes of a distributed compilation. The parser
+  * is not part of these packages, so the driver that owns it supplies an
+  * implementation, typically a lambda around the generated parser.
+  * */
+public interface ProgramParser {
+    /** Parse a list of source files into one program
+      * @param filenames names of the source files
+      * @return root of the AST
+      * @throws Exception if a file cannot be read or does not parse
+      * */
+    Program parse(String[] filenames) throws Exception;
+}
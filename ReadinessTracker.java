@@ -0,0 +1,85 @@
+package semant;
+
+import util.*;
+import java.util.*;
+
+/** Keeps track of which classes have finished type checking and tells a
+  * <tt>ClassReadyListener</tt> about each class once it and its ancestors
+  * are finished and error free. Once any class has errors no more classes
+  * are reported, since a program with errors is not generated.
+  * <p>
+  * Only ancestors are waited for, not the classes a class calls or
+  * creates. That is enough because generating a class reads only its own
+  * AST, annotated by its own type check, and the signatures in the method
+  * tables, which are complete before any class is checked. Checking a
+  * dispatch or <tt>new</tt> target writes only into the target's own AST,
+  * so nothing a class's code depends on changes afterwards. If the target
+  * then fails, the whole program fails and the code generated early is
+  * never written. The wait for ancestors only keeps generation parents
+  * first, in the order of the non-pipelined generator.
+  * */
+class ReadinessTracker {
+    /** Listener told about ready classes */
+    private ClassReadyListener listener;
+
+    /** Number of unfinished type check tasks for each class */
+    private Map<ClassTreeNode, Integer> pending = new HashMap<ClassTreeNode, Integer>();
+
+    /** Classes that had type errors */
+    private Set<ClassTreeNode> failed = new HashSet<ClassTreeNode>();
+
+    /** Classes already handed to the listener */
+    private Set<ClassTreeNode> ready = new HashSet<ClassTreeNode>();
+
+    ReadinessTracker(ClassReadyListener listener) {
+        this.listener = listener;
+    }
+
+    /** Record that one more type check task will run for a class
+      * (must be called for every task before any of them is started)
+      * @param ctn class tree node of the class
+      * */
+    synchronized void expect(ClassTreeNode ctn) {
+        pending.merge(ctn, 1, Integer::sum);
+    }
+
+    /** Record that a type check task has finished
+      * @param ctn class tree node of the class the task checked
+      * @param clean true if the task registered no errors
+      * */
+    void taskDone(ClassTreeNode ctn, boolean clean) {
+        List<ClassTreeNode> released = new ArrayList<ClassTreeNode>();
+        synchronized (this) {
+            if (!clean) {
+                failed.add(ctn);
+            }
+            pending.merge(ctn, -1, Integer::sum);
+            release(ctn, released);
+        }
+        // call the listener outside the lock so it can take its time
+        for (ClassTreeNode ctn2 : released) {
+            listener.classReady(ctn2);
+        }
+    }
+
+    /** Release a class, and then those of its descendants that were only
+      * waiting for it, if it is ready
+      * @param ctn class tree node of the class
+      * @param released list the released classes are added to
+      * */
+    private void release(ClassTreeNode ctn, List<ClassTreeNode> released) {
+        if (!failed.isEmpty() || ready.contains(ctn) || pending.getOrDefault(ctn, 1) != 0) {
+            return;
+        }
+        var parent = ctn.getParent();
+        if (parent != null && !parent.isBuiltIn() && !ready.contains(parent)) {
+            return;
+        }
+        ready.add(ctn);
+        released.add(ctn);
+        var iter = ctn.getChildrenList();
+        while (iter.hasNext()) {
+            release(iter.next(), released);
+        }
+    }
+}
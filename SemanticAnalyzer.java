@@ -29,6 +29,8 @@ import ast.*;
 import util.*;
 import visitor.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 /** The <tt>SemanticAnalyzer</tt> class performs semantic analysis.
   * In particular this class is able to perform (via the <tt>analyze()</tt>
@@ -46,30 +48,134 @@ public class SemanticAnalyzer {
     /** Root of the class hierarchy tree */
     private ClassTreeNode root;
     
-    /** Maps class names to ClassTreeNode objects describing the class */
+    /** Maps class names to ClassTreeNode objects describing the class
+      * (only used while building the class tree, see classRegistry) */
     private Hashtable<String,ClassTreeNode> classMap = new Hashtable<String,ClassTreeNode>();
 
+    /** Frozen, read-only view of classMap used once the class tree is built */
+    private ClassRegistry classRegistry;
+
+    /** Flattened method table of each class, by class id (built on first use,
+      * once the class environments are complete) */
+    private MethodTable[] methodTables;
+
+    /** Dense field table of each class, by class id (built on first use,
+      * once the class environments are complete) */
+    private FieldTable[] fieldTables;
+
     /** Ordered list of ClassTreeNode objects (breadth first) */
     private Vector<ClassTreeNode> orderedClassList = new Vector<ClassTreeNode>();
     
-    /** Object for error handling */
-    private ErrorHandler errorHandler = new ErrorHandler();
+    /** Collects the errors of all phases; reported through an ErrorHandler at the end */
+    private DiagnosticSink errorHandler = new DiagnosticSink();
     
     /** Boolean indicating whether debugging is enabled */
     private boolean debug = false;
 
-    /** Maximum number of inherited and non-inherited fields that can be defined for any one class */
-    private final int MAX_NUM_FIELDS = 1500;
+    /** Classes with more members than this are type checked in several pieces */
+    private static final int MEMBERS_PER_TASK = 32;
+
+    /** Runs the tasks of the parallel phases */
+    private PhaseRunner phaseRunner;
+
+    /** If not null, told about each class as soon as it is ready for code generation */
+    private ClassReadyListener classReadyListener;
+
+    /** Summaries of the precompiled library classes the program is compiled against */
+    private Map<String,ClassSummary> librarySummaries = new LinkedHashMap<String,ClassSummary>();
+
+    /** Which classes refer to which, recorded during type checking */
+    private DependencyGraph dependencyGraph = new DependencyGraph();
+
+    /** Names of the library classes entered into the class tree */
+    private Set<String> libraryClasses = new HashSet<String>();
+
+    /** Classes whose header or members could not be built, and their
+      * descendants; they are not type checked, and dispatches to them are
+      * not reported as unknown */
+    private Set<String> poisoned = ConcurrentHashMap.newKeySet();
+
+    /** Number of classes not type checked because they are poisoned */
+    private int skippedClasses = 0;
+
+    /** Number of members of those classes */
+    private int skippedMembers = 0;
 
     /** SemanticAnalyzer constructor
       * @param program root of the AST
       * @param debug boolean indicating whether debugging is enabled
       * */
     public SemanticAnalyzer(Program program, boolean debug) {
+	this(program, debug, 1);
+    }
+
+    /** SemanticAnalyzer constructor
+      * @param program root of the AST
+      * @param debug boolean indicating whether debugging is enabled
+      * @param jobs number of threads used by the parallel phases (1 = sequential)
+      * */
+    public SemanticAnalyzer(Program program, boolean debug, int jobs) {
 	this.program = program;
 	this.debug = debug;
+	this.phaseRunner = new PhaseRunner(jobs);
     }
     
+    /** Get the classes of the analyzed program
+      * @return registry of all classes, or null if analyze() has not been run
+      * */
+    public ClassRegistry getClassRegistry() {
+	return classRegistry;
+    }
+
+    /** Get the flattened method table of a class, e.g. to lay out its vtable;
+      * the class environments must have been built or loaded first
+      * @param className name of the class
+      * @return its table, or null if there is no such class
+      * */
+    public MethodTable getMethodTable(String className) {
+	int id = classRegistry.getId(className);
+	return id < 0 ? null : methodTables()[id];
+    }
+
+    /** Get the field table of a class, e.g. to lay out its objects; the
+      * class environments must have been built or loaded first
+      * @param className name of the class
+      * @return its table, or null if there is no such class
+      * */
+    public FieldTable getFieldTable(String className) {
+	int id = classRegistry.getId(className);
+	return id < 0 ? null : fieldTables()[id];
+    }
+
+    /** Stop the analysis once this many errors have been found
+      * @param maxErrors the error cap (0 for no limit)
+      * */
+    public void setMaxErrors(int maxErrors) {
+	errorHandler.setMaxErrors(maxErrors);
+    }
+
+    /** Set a listener that is handed each user-defined class as soon as it
+      * and its ancestors have type checked without errors, so that code
+      * generation can overlap with the rest of the type checking.
+      * Nothing is handed out if an earlier phase found errors.
+      * @param classReadyListener the listener (null to disable)
+      * */
+    public void setClassReadyListener(ClassReadyListener classReadyListener) {
+	this.classReadyListener = classReadyListener;
+    }
+
+    /** Compile the program against precompiled library classes. Library
+      * classes are treated like the built-in classes: their environments
+      * come straight from the summaries (they are not parsed or checked
+      * again) and they are neither type checked nor generated.
+      * @param summaries summaries of the library's classes (see ClassLibrary)
+      * */
+    public void addLibrary(Collection<ClassSummary> summaries) {
+	for (ClassSummary summary : summaries) {
+		librarySummaries.putIfAbsent(summary.getName(), summary);
+	}
+    }
+
     /** Analyze the AST checking for semantic errors and annotating the tree
       * Also builds an auxiliary class hierarchy tree 
       * @return root of the class hierarchy tree (needed for code generation)
@@ -85,6 +191,51 @@ public class SemanticAnalyzer {
       * */
     public ClassTreeNode analyze() {
 
+	runPhases();
+	checkErrors();
+	return root;
+
+    }
+
+    /** Analyze the AST like <tt>analyze()</tt>, but hand back the errors
+      * instead of reporting them (and exiting), for drivers that compile
+      * many programs in one process
+      * @return the errors found, in report order (empty if there were none)
+      * */
+    public List<DiagnosticSink.Diagnostic> check() {
+	runPhases();
+	phaseRunner.shutdown();
+	return errorHandler.getDiagnostics();
+    }
+
+    /** Get the root of the class hierarchy tree
+      * @return root (null before the class tree is built)
+      * */
+    public ClassTreeNode getRoot() {
+	return root;
+    }
+
+    /** Run all parts of the analysis, collecting the errors
+      * */
+    private void runPhases() {
+	// PARTS 1-3: class tree, class symbol table, Main class/main method
+	buildEnvironment();
+	
+	// PART 4: type checking
+	// type check each member (fields and methods) of each user-defined class
+	if (!errorHandler.isCancelled()) {
+	    typeCheck(orderedClassList);
+	}
+    }
+
+    /** Run the first three parts of the analysis: build and check the class
+      * hierarchy tree and the class environments, and check the Main class.
+      * Lets a driver inspect (or ship elsewhere) the class environments
+      * before the classes are type checked with <tt>typeCheckClasses()</tt>.
+      * @return true if no errors were found
+      * */
+    public boolean buildEnvironment() {
+
 	// list of class declarations
 	ClassList classList = program.getClassList();
 	
@@ -94,145 +245,196 @@ public class SemanticAnalyzer {
 	
 	// PART 2: class symbol table
 	// build class symbol table for members and check that members are declared properly
-	buildSymbolTable();
+	if (!errorHandler.isCancelled()) {
+	    buildSymbolTable();
+	}
 	
 	// PART 3: Main class/main method
 	// check that there is a Main class and main method
-	checkMain();
-	
-	// PART 4: type checking
-	// type check each member (fields and methods) of each user-defined class
-	typeCheck();
+	if (!errorHandler.isCancelled()) {
+	    checkMain();
+	}
 
-	errorHandler.checkErrors();	
-	return root;
+	return !errorHandler.errorsFound();
+    }
+
+    /** Set up the class environments from summaries built by another
+      * analyzer for the same program, instead of building and checking
+      * them from the ASTs. Classes of this program use their own ASTs (so
+      * type checking annotates them), the built-in classes their shared
+      * ASTs, and the others stub ASTs.
+      * @param summaries summaries of all classes, parents before children
+      * */
+    public void loadEnvironment(List<ClassSummary> summaries) {
+	Map<String,Class_> parsed = new HashMap<String,Class_>();
+	var clazzIter = program.getClassList().getIterator();
+	while (clazzIter.hasNext()) {
+		var clazz = (Class_) clazzIter.next();
+		parsed.putIfAbsent(clazz.getName(), clazz);
+	}
+
+	for (ClassSummary summary : summaries) {
+		boolean shared = summary.isBuiltIn() && BuiltinClasses.contains(summary.getName());
+		ClassTreeNode ctn;
+		if (shared) {
+			ctn = BuiltinClasses.newNode(summary.getName(), classMap);
+		} else {
+			Class_ astNode = summary.isBuiltIn() ? null : parsed.get(summary.getName());
+			if (astNode == null) {
+				astNode = summary.toClass_();
+			}
+			ctn = new ClassTreeNode(astNode, summary.isBuiltIn(), summary.isExtendable(), classMap);
+		}
+		classMap.put(summary.getName(), ctn);
+		if (summary.getParent() == null) {
+			root = ctn;
+		} else {
+			ctn.setParent(classMap.get(summary.getParent()));
+		}
+
+		if (shared) {
+			BuiltinClasses.enterMembers(ctn);
+		} else {
+			enterMembers(ctn, summary);
+		}
+		orderedClassList.add(ctn);
+	}
+	classRegistry = ClassRegistry.freeze(classMap, orderedClassList);
+    }
 
+    /** Fill the symbol tables of a class from its summary, making the same
+      * entries as <tt>ClassEnvVisitor</tt> makes for the accepted members
+      * @param ctn class tree node of the class (its parent must be set)
+      * @param summary summary of the class
+      * */
+    private static void enterMembers(ClassTreeNode ctn, ClassSummary summary) {
+	var varSymbolTable = ctn.getVarSymbolTable();
+	var methodSymbolTable = ctn.getMethodSymbolTable();
+	varSymbolTable.enterScope();
+	methodSymbolTable.enterScope();
+	for (ClassSummary.FieldSignature field : summary.getFields()) {
+		varSymbolTable.add(field.getName(), field.getType());
+	}
+	Map<String,Method> methods = new HashMap<String,Method>();
+	var memberIter = ctn.getASTNode().getMemberList().getIterator();
+	while (memberIter.hasNext()) {
+		var member = memberIter.next();
+		if (member instanceof Method) {
+			methods.putIfAbsent(((Method) member).getName(), (Method) member);
+		}
+	}
+	for (ClassSummary.MethodSignature method : summary.getMethods()) {
+		methodSymbolTable.add(method.getName(), methods.get(method.getName()));
+	}
+    }
+
+    /** Type check some of the user-defined classes (part 4 of the analysis
+      * for just these classes); the class environments must have been built
+      * or loaded first
+      * @param classNames names of the classes to check
+      * */
+    public void typeCheckClasses(Collection<String> classNames) {
+	List<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+	for (String name : classNames) {
+		var ctn = classRegistry.get(name);
+		if (ctn != null && !ctn.isBuiltIn()) {
+			classes.add(ctn);
+		}
+	}
+	typeCheck(classes);
+    }
+
+    /** Type check some members of one class on their own, e.g. a method
+      * whose body was edited while the class's member signatures stayed
+      * the same; the class environments must have been built first. The
+      * errors are returned rather than added to this analyzer's errors.
+      * @param className name of the class
+      * @param members members to check (they need not be the ones the
+      *        class environment was built from, as long as their
+      *        signatures match)
+      * @return the errors found in these members, in report order
+      * */
+    public List<DiagnosticSink.Diagnostic> typeCheckMembers(String className, List<Member> members) {
+	DiagnosticSink sink = new DiagnosticSink();
+	newTypeCheckVisitor(sink).check(classRegistry.get(className), members);
+	return sink.getDiagnostics();
+    }
+
+    /** Record the class dependencies into an existing graph (e.g. the one of
+      * an earlier analysis of the same program) instead of a new one
+      * @param dependencyGraph the graph
+      * */
+    public void setDependencyGraph(DependencyGraph dependencyGraph) {
+	this.dependencyGraph = dependencyGraph;
+    }
+
+    /** Get the class dependencies recorded by type checking, e.g. to find
+      * the classes to pass to <tt>typeCheckClasses()</tt> after an edit
+      * @return the dependency graph
+      * */
+    public DependencyGraph getDependencyGraph() {
+	return dependencyGraph;
+    }
+
+    /** Get the errors found so far
+      * @return the analyzer's error sink
+      * */
+    public DiagnosticSink getDiagnosticSink() {
+	return errorHandler;
+    }
+
+    /** Release the threads of the parallel phases; done by <tt>check()</tt>
+      * and <tt>checkErrors()</tt>, only needed by drivers that call neither
+      * */
+    public void shutdown() {
+	phaseRunner.shutdown();
+    }
+
+    /** Get the names of the poisoned classes: those whose header or members
+      * could not be built, and their descendants
+      * @return unmodifiable set of class names
+      * */
+    public Set<String> getPoisonedClasses() {
+	return Collections.unmodifiableSet(poisoned);
+    }
+
+    /** Describe the type checking skipped because of poisoned classes
+      * @return one line, or null if nothing was skipped
+      * */
+    public String getPruningSummary() {
+	if (skippedClasses == 0) {
+	    return null;
+	}
+	return String.format("%d classes could not be built; type checking skipped %d classes"
+			     + " (%d members) that depend on them", poisoned.size(),
+			     skippedClasses, skippedMembers);
+    }
+
+    /** Report the errors found so far, exiting if there were any
+      * */
+    public void checkErrors() {
+	phaseRunner.shutdown();
+	if (errorHandler.errorsFound() && getPruningSummary() != null) {
+	    System.err.println("note: " + getPruningSummary());
+	}
+	if (errorHandler.isCancelled()) {
+	    System.err.printf("note: error limit reached; %d more errors were dropped and the"
+			      + " rest of the analysis was skipped%n", errorHandler.getDroppedCount());
+	}
+	ErrorHandler reporter = new ErrorHandler();
+	errorHandler.flushTo(reporter);
+	reporter.checkErrors();	
     }
     
-    /** Add built in classes to the class tree 
+    /** Add built in classes to the class tree (their ASTs and method
+      * tables are shared by all compilations, see <tt>BuiltinClasses</tt>)
       * */
     private void updateBuiltins() {
-	// create AST node for object
-	Class_ astNode = 
-	    new Class_(-1, "<built-in class>", "Object", null, 
-		       (MemberList)(new MemberList(-1))
-		       .addElement(new Method(-1, "Object", "clone", 
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null)))));
-	// create a class tree node for object, save in variable root
-	root = new ClassTreeNode(astNode, /*built-in?*/true, /*extendable?*/true, classMap);
-	// add object class tree node to the mapping
-	classMap.put("Object", root);
-	
-	// note: String, TextIO, and Sys all have fields that are not shown below.  Because
-	// these classes cannot be extended and fields are protected, they cannot be accessed by
-	// other classes, so they do not have to be included in the AST.
-	
-	// create AST node for String
-	astNode =
-	    new Class_(-1, "<built-in class>",
-		       "String", "Object", 					
-		       (MemberList)(new MemberList(-1))
-                       .addElement(new Method(-1, "int", "length",
-                                              new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "boolean", "equals",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "Object", 
-								     "str")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "String", "substring",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "int", 
-								     "beginIndex"))
-					      .addElement(new Formal(-1, "int", "endIndex")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "String", "concat",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "String",
-								     "str")), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null)))));
-	// create class tree node for String, add it to the mapping
-	classMap.put("String", new ClassTreeNode(astNode, /*built-in?*/true, /*extendable?*/false, classMap));
-	
-	// create AST node for TextIO
-	astNode =
-	    new Class_(-1, "<built-in class>", 
-		       "TextIO", "Object", 					
-		       (MemberList)(new MemberList(-1))
-		       .addElement(new Method(-1, "void", "readStdin", 
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "void", "readFile",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "String", 
-								     "readFile")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "void", "writeStdout", 
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "void", "writeStderr", 
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "void", "writeFile",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "String", 
-								     "writeFile")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "String", "getString",
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "int", "getInt",
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "TextIO", "putString",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "String", 
-								     "str")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       .addElement(new Method(-1, "TextIO", "putInt",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "int", 
-								     "n")),
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null)))));
-	// create class tree node for TextIO, add it to the mapping
-	classMap.put("TextIO", new ClassTreeNode(astNode, /*built-in?*/true, /*extendable?*/false, classMap));
-	
-	// create AST node for Sys
-	astNode =
-	    new Class_(-1, "<built-in class>",
-		       "Sys", "Object", 
-		       (MemberList)(new MemberList(-1))
-		       .addElement(new Method(-1, "void", "exit",
-					      (FormalList)(new FormalList(-1))
-					      .addElement(new Formal(-1, "int", 
-								     "status")), 
-					      (StmtList)(new StmtList(-1))
-					      .addElement(new ReturnStmt(-1, null))))
-		       /* MC: Adding time() requires modifying Spim, which I don't want to do yet
-			      (although I do have this working with Spim in a branched version). */
-		       /*
-		       .addElement(new Method(-1, "int", "time",
-					      new FormalList(-1), 
-					      (StmtList)(new StmtList(-1))
-				              .addElement(new ReturnStmt(-1, null)))) */
-		       );
-	// create class tree node for Sys, add it to the mapping
-	classMap.put("Sys", new ClassTreeNode(astNode, /*built-in?*/true, /*extendable?*/false, classMap));
+	for (String name : BuiltinClasses.getNames()) {
+	    classMap.put(name, BuiltinClasses.newNode(name, classMap));
+	}
+	// the class tree node for object is saved in variable root
+	root = classMap.get("Object");
     }
 
 
@@ -250,17 +452,34 @@ public class SemanticAnalyzer {
 	  private void buildClassTree(ClassList classList) {
 		updateBuiltins();
 
+		for (ClassSummary summary : librarySummaries.values()) {
+			if (!classMap.containsKey(summary.getName())) {
+				libraryClasses.add(summary.getName());
+				classMap.put(summary.getName(), new ClassTreeNode(summary.toClass_(),
+						/*built-in?*/true, summary.isExtendable(), classMap));
+			}
+		}
+
+		// redefinitions are left out of the class map (and so never checked);
+		// the class their name resolves to is not affected by them
+		Set<Class_> rejected = Collections.newSetFromMap(new IdentityHashMap<Class_, Boolean>());
 		var clazzIter = classList.getIterator();
 		while (clazzIter.hasNext()) {
 			var clazz = (Class_) clazzIter.next();
 			var clazzName = clazz.getName();
-			if (classMap.get(clazzName) != null && classMap.get(clazzName).isBuiltIn()) {
+			if (libraryClasses.contains(clazzName)) {
+				errorHandler.register(2, clazz.getFilename(), clazz.getLineNum(),
+						"class '%s' is already defined in a library", clazzName);
+				rejected.add(clazz);
+			} else if (classMap.get(clazzName) != null && classMap.get(clazzName).isBuiltIn()) {
 				errorHandler.register(2, clazz.getFilename(), clazz.getLineNum(),
-						String.format("built-in class '%s' cannot be redefined", clazzName));
+						"built-in class '%s' cannot be redefined", clazzName);
+				rejected.add(clazz);
 			} else if (classMap.containsKey(clazzName)) {
 				errorHandler.register(2, clazz.getFilename(), clazz.getLineNum(),
-						String.format("duplicate class '%s' (originally defined at line %s)",
-								clazzName, classMap.get(clazzName).getASTNode().getLineNum()));
+						"duplicate class '%s' (originally defined at line %s)",
+							clazzName, classMap.get(clazzName).getASTNode().getLineNum());
+				rejected.add(clazz);
 			} else {
 				classMap.put(clazzName, new ClassTreeNode(clazz, false, true, classMap));
 			}
@@ -269,6 +488,9 @@ public class SemanticAnalyzer {
 		var clazzIterr = classList.getIterator();
 		while (clazzIterr.hasNext()) {
 			var clazz = (Class_) clazzIterr.next();
+			if (rejected.contains(clazz)) {
+				continue; // its parent must not be given to the class of the same name
+			}
 			var clazzParent = clazz.getParent();
 
 			String parentName = (clazzParent == null) ? "Object" : clazzParent;
@@ -276,17 +498,38 @@ public class SemanticAnalyzer {
 
 			if (parentCTN == null) {
 				errorHandler.register(2, clazz.getFilename(), clazz.getLineNum(),
-						String.format("class '%s' extends non-existent class '%s'",
-								clazz.getName(), parentName));
+						"class '%s' extends non-existent class '%s'",
+							clazz.getName(), parentName);
+				poisoned.add(clazz.getName());
 			} else if (!parentCTN.isExtendable()) {
 				errorHandler.register(2, clazz.getFilename(), clazz.getLineNum(),
-						String.format("class '%s' extends non-extendable class '%s'",
-								clazz.getName(), parentName));
+						"class '%s' extends non-extendable class '%s'",
+							clazz.getName(), parentName);
+				poisoned.add(clazz.getName());
 			} else {
 				classMap.get(clazz.getName()).setParent(parentCTN);
 			}
 		}
 
+		for (ClassSummary summary : librarySummaries.values()) {
+			if (!libraryClasses.contains(summary.getName())) {
+				continue; // clashes with a built-in class, which wins
+			}
+			var ctn = classMap.get(summary.getName());
+			String parentName = summary.getParent() == null ? "Object" : summary.getParent();
+			// a library was compiled against library and built-in classes only, so
+			// a source class of the same name is not its parent
+			ClassTreeNode parentCTN = libraryClasses.contains(parentName)
+					|| BuiltinClasses.contains(parentName) ? classMap.get(parentName) : null;
+			if (parentCTN == null) {
+				errorHandler.register(2, summary.getFilename(), summary.getLineNum(),
+						"library class '%s' extends class '%s', which is not loaded",
+							summary.getName(), parentName);
+			} else {
+				ctn.setParent(parentCTN);
+			}
+		}
+
 		classMap.get("TextIO").setParent(root);
 		classMap.get("Sys").setParent(root);
 		classMap.get("String").setParent(root);
@@ -304,8 +547,9 @@ public class SemanticAnalyzer {
 						2,
 						ctn.getASTNode().getFilename(),
 						ctn.getASTNode().getLineNum(),
-						String.format("inheritance cycle found involving class '%s'",
-								ctn.getName()));
+						"inheritance cycle found involving class '%s'",
+							ctn.getName());
+				poisoned.add(ctn.getName());
 			}
 		}
 
@@ -319,6 +563,8 @@ public class SemanticAnalyzer {
 				temp.addLast(iter.next());
 			}
 		}
+
+		classRegistry = ClassRegistry.freeze(classMap, orderedClassList);
 	}
 
 	/**
@@ -330,20 +576,89 @@ public class SemanticAnalyzer {
 	 * parent class (since child may use symbols in superclass).
 	 */
 	private void buildSymbolTable() {
-		ClassEnvVisitor classEnvVisitor = new ClassEnvVisitor(errorHandler, classMap);
+		if (!phaseRunner.isParallel()) {
+			for (ClassTreeNode ctn : orderedClassList) {
+				if (errorHandler.isCancelled()) {
+					break;
+				}
+				if (!enterPrebuiltMembers(ctn)) {
+					DiagnosticSink scope = errorHandler.scope();
+					new ClassEnvVisitor(scope, classRegistry).visit(ctn.getASTNode());
+					if (scope.errorsFound()) {
+						poisoned.add(ctn.getName());
+					}
+				}
+			}
+			poisonDescendants();
+			return;
+		}
+
+		// one depth of the class tree at a time: a class only reads the tables of
+		// its ancestors, which are complete once the previous level is done, and
+		// writes only its own, so all classes of a level can be built together.
+		// Levels are expanded in the same order as orderedClassList.
+		List<ClassTreeNode> level = new ArrayList<ClassTreeNode>();
+		level.add(root);
+		while (!level.isEmpty()) {
+			List<Consumer<DiagnosticSink>> tasks = new ArrayList<Consumer<DiagnosticSink>>();
+			List<ClassTreeNode> nextLevel = new ArrayList<ClassTreeNode>();
+			for (ClassTreeNode ctn : level) {
+				tasks.add(handler -> {
+					if (!enterPrebuiltMembers(ctn)) {
+						new ClassEnvVisitor(handler, classRegistry).visit(ctn.getASTNode());
+						if (handler.errorsFound()) {
+							poisoned.add(ctn.getName());
+						}
+					}
+				});
+				var iter = ctn.getChildrenList();
+				while (iter.hasNext()) {
+					nextLevel.add(iter.next());
+				}
+			}
+			phaseRunner.run(tasks, errorHandler);
+			level = nextLevel;
+		}
+		poisonDescendants();
+	}
+
+	/**
+	 * Poison the descendants of poisoned classes, whose environments
+	 * inherit the broken parts
+	 */
+	private void poisonDescendants() {
 		for (ClassTreeNode ctn : orderedClassList) {
-			classEnvVisitor.visit(ctn.getASTNode());
+			if (ctn.getParent() != null && poisoned.contains(ctn.getParent().getName())) {
+				poisoned.add(ctn.getName());
+			}
 		}
 	}
 
+	/**
+	 * Build the environment of a built-in class from its precomputed method
+	 * table, or of a library class from its summary
+	 * @return false if the class is neither
+	 */
+	private boolean enterPrebuiltMembers(ClassTreeNode ctn) {
+		if (libraryClasses.contains(ctn.getName())) {
+			enterMembers(ctn, librarySummaries.get(ctn.getName()));
+			return true;
+		}
+		if (ctn.isBuiltIn() && BuiltinClasses.contains(ctn.getName())) {
+			BuiltinClasses.enterMembers(ctn);
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Check that Main class and main() method are defined correctly
 	 */
 	private void checkMain() {
-		if (!classMap.containsKey("Main")) {
+		if (!classRegistry.contains("Main")) {
 			errorHandler.register(2, "no class 'Main' defined.");
 		}
-		var mainCTN = classMap.get("Main");
+		var mainCTN = classRegistry.get("Main");
 		if (mainCTN != null) {
 			var mainMST = mainCTN.getMethodSymbolTable();
 
@@ -358,7 +673,7 @@ public class SemanticAnalyzer {
 				if (mainMethodX.getFormalList().getSize() != 0) {
 					errorHandler.register(2, mainCTN.getASTNode().getFilename(),
 							mainMethodX.getLineNum(),
-							String.format("'main' method in class 'Main' cannot take arguments"));
+							"'main' method in class 'Main' cannot take arguments");
 				}
 				var iter = mainMethodX.getStmtList().getIterator();
 				while (iter.hasNext()) {
@@ -370,8 +685,7 @@ public class SemanticAnalyzer {
 									!mainMethodX.getReturnType().equals("void")) {
 								errorHandler.register(2, mainCTN.getASTNode().getFilename(),
 										mainMethodX.getLineNum(),
-										String.format(
-												"'main' method in class 'Main' must be void"));
+										"'main' method in class 'Main' must be void");
 							}
 						}
 					}
@@ -381,14 +695,111 @@ public class SemanticAnalyzer {
 	}
 
 	/**
-	 * Type check each class member
+	 * Type check each member of the given classes (built-in classes are skipped)
 	 */
-	private void typeCheck() {
-		TypeCheckVisitor typeCheckVisitor = new TypeCheckVisitor(errorHandler, classMap);
-		for (ClassTreeNode ctn : orderedClassList) {
-			if (!ctn.isBuiltIn()) {
-				typeCheckVisitor.visit(ctn.getASTNode());
+	private void typeCheck(List<ClassTreeNode> classes) {
+		// classes are only handed on if the class environments are sound
+		ReadinessTracker tracker = null;
+		if (classReadyListener != null && !errorHandler.errorsFound()) {
+			tracker = new ReadinessTracker(classReadyListener);
+		}
+
+		// poisoned classes had their errors reported already; checking them
+		// (or their subclasses) would mostly repeat them
+		List<ClassTreeNode> healthy = new ArrayList<ClassTreeNode>();
+		for (ClassTreeNode ctn : classes) {
+			if (ctn.isBuiltIn()) {
+				continue;
+			}
+			if (poisoned.contains(ctn.getName())) {
+				skippedClasses++;
+				skippedMembers += ctn.getASTNode().getMemberList().getSize();
+			} else {
+				healthy.add(ctn);
 			}
 		}
+		classes = healthy;
+
+		// references are recorded afresh for every class checked
+		dependencyGraph.addInheritance(classRegistry);
+		for (ClassTreeNode ctn : classes) {
+			dependencyGraph.clearReferences(ctn.getName());
+		}
+
+		if (!phaseRunner.isParallel() && tracker == null) {
+			TypeCheckVisitor typeCheckVisitor = newTypeCheckVisitor(errorHandler);
+			for (ClassTreeNode ctn : classes) {
+				if (errorHandler.isCancelled()) {
+					break;
+				}
+				if (!ctn.isBuiltIn()) {
+					typeCheckVisitor.visit(ctn.getASTNode());
+				}
+			}
+			return;
+		}
+
+		// the class environments are only read from here on, so each task just
+		// needs its own visitor; large classes are split into runs of members
+		List<Consumer<DiagnosticSink>> tasks = new ArrayList<Consumer<DiagnosticSink>>();
+		List<ClassTreeNode> taskClasses = new ArrayList<ClassTreeNode>();
+		for (ClassTreeNode ctn : classes) {
+			if (ctn.isBuiltIn()) {
+				continue;
+			}
+			List<Member> members = new ArrayList<Member>();
+			var memberIter = ctn.getASTNode().getMemberList().getIterator();
+			while (memberIter.hasNext()) {
+				members.add((Member) memberIter.next());
+			}
+			// every class gets at least one task so that its completion is seen
+			int i = 0;
+			do {
+				var chunk = members.subList(i, Math.min(i + MEMBERS_PER_TASK, members.size()));
+				tasks.add(handler -> newTypeCheckVisitor(handler).check(ctn, chunk));
+				taskClasses.add(ctn);
+				if (tracker != null) {
+					tracker.expect(ctn);
+				}
+				i += MEMBERS_PER_TASK;
+			} while (i < members.size());
+		}
+		if (tracker == null) {
+			phaseRunner.run(tasks, errorHandler);
+		} else {
+			ReadinessTracker readiness = tracker;
+			phaseRunner.run(tasks, errorHandler,
+					(index, clean) -> readiness.taskDone(taskClasses.get(index), clean));
+		}
+	}
+
+	/**
+	 * Get the method tables of all classes, building them the first time
+	 */
+	private synchronized MethodTable[] methodTables() {
+		if (methodTables == null) {
+			methodTables = MethodTable.build(classRegistry);
+		}
+		return methodTables;
+	}
+
+	/**
+	 * Get the field tables of all classes, building them the first time
+	 */
+	private synchronized FieldTable[] fieldTables() {
+		if (fieldTables == null) {
+			fieldTables = FieldTable.build(classRegistry);
+		}
+		return fieldTables;
+	}
+
+	/**
+	 * Make a type checker that registers its errors with the given sink
+	 */
+	private TypeCheckVisitor newTypeCheckVisitor(DiagnosticSink sink) {
+		TypeCheckVisitor typeCheckVisitor = new TypeCheckVisitor(sink, classRegistry,
+				methodTables(), fieldTables(), dependencyGraph);
+		typeCheckVisitor.setPoisoned(poisoned);
+		return typeCheckVisitor;
 	}
 }
@@ -0,0 +1,71 @@
+package semant;
+
+import ast.*;
+import util.*;
+import java.util.*;
+
+/** Signature of a method: its formal and return types, interned, and its
+  * JVM descriptor, all worked out once from the Method node. Type checking
+  * checks a dispatch's actuals against it and code generation emits its
+  * descriptor for the method and for every call to it.
+  * */
+public final class Signature {
+    private final String name;
+    private final Type returnType;
+    private final Type[] formalTypes;
+    private final String descriptor;
+
+    private Signature(String name, Type returnType, Type[] formalTypes) {
+        this.name = name;
+        this.returnType = returnType;
+        this.formalTypes = formalTypes;
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Type formalType : formalTypes) {
+            descriptor.append(formalType.getDescriptor());
+        }
+        this.descriptor = descriptor.append(')').append(returnType.getDescriptor()).toString();
+    }
+
+    /** Work out the signature of a method
+      * @param method the method's AST node
+      * @return its signature
+      * */
+    public static Signature of(Method method) {
+        Type[] formalTypes = new Type[method.getFormalList().getSize()];
+        int i = 0;
+        for (Iterator it = method.getFormalList().getIterator(); it.hasNext();) {
+            formalTypes[i++] = Type.of(((Formal) it.next()).getType());
+        }
+        return new Signature(method.getName(), Type.of(method.getReturnType()), formalTypes);
+    }
+
+    /** @return name of the method */
+    public String getName() {
+        return name;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    /** @return number of formals */
+    public int getFormalCount() {
+        return formalTypes.length;
+    }
+
+    /** @param i index of a formal
+      * @return its declared type */
+    public Type getFormalType(int i) {
+        return formalTypes[i];
+    }
+
+    /** @return the JVM method descriptor, e.g. "(I[ILjava/lang/String;)V" */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public String toString() {
+        return name + descriptor;
+    }
+}
@@ -0,0 +1,142 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures the cold start of the compiler: the time from starting a new
+ * JVM on a compile until the first .j file appears, and until the JVM
+ * exits. Each run gets a fresh empty working directory (the compiler
+ * writes there), so source files must be given as absolute paths.
+ *
+ * <pre>
+ *   java codegenjvm.StartupBenchmark [--runs N] [--archive FILE] [--train] -- java -cp ... Main /abs/Prog.btm
+ * </pre>
+ * The command is run N times as given, then, if an archive is given, N
+ * times with <tt>-XX:SharedArchiveFile</tt> added after the java
+ * executable, and the medians of both are printed. With --train the
+ * command is first run once with <tt>-XX:ArchiveClassesAtExit</tt> to
+ * create the archive from that compile (JDK 13+).
+ */
+public class StartupBenchmark {
+    /** How often the working directory is polled for the first .j file, in ms */
+    private static final int POLL_MS = 1;
+
+    /** One run: time to the first .j file and to exit, in ms (-1 if no file appeared) */
+    private static class Run {
+        double firstFile = -1;
+        double exit;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        String archive = null;
+        boolean train = false;
+        int i = 0;
+        for (; i < args.length && !args[i].equals("--"); i++) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--archive":
+                    archive = Paths.get(args[++i]).toAbsolutePath().toString();
+                    break;
+                case "--train":
+                    train = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option '" + args[i] + "'");
+            }
+        }
+        List<String> command =
+                new ArrayList<String>(Arrays.asList(args).subList(Math.min(i + 1, args.length), args.length));
+        if (command.isEmpty() || (train && archive == null)) {
+            System.err.println("usage: StartupBenchmark [--runs N] [--archive FILE [--train]] -- command...");
+            System.exit(1);
+        }
+
+        if (train) {
+            Run run = time(withOption(command, "-XX:ArchiveClassesAtExit=" + archive));
+            System.out.printf("training compile: %.1f ms, archive %s%n", run.exit, archive);
+        }
+        report("default", command, runs);
+        if (archive != null) {
+            report("shared archive", withOption(command, "-XX:SharedArchiveFile=" + archive), runs);
+        }
+    }
+
+    /**
+     * Run a command several times and print the medians
+     */
+    private static void report(String label, List<String> command, int runs) throws Exception {
+        time(command); // warm the file system cache, not measured
+        double[] firstFile = new double[runs];
+        double[] exit = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            Run run = time(command);
+            firstFile[i] = run.firstFile;
+            exit[i] = run.exit;
+        }
+        System.out.printf("%-16s first .j file %8.1f ms, exit %8.1f ms (median of %d)%n",
+                label, median(firstFile), median(exit), runs);
+    }
+
+    /**
+     * Run a command once in a fresh directory
+     */
+    private static Run time(List<String> command) throws Exception {
+        Path dir = Files.createTempDirectory("bantam-startup");
+        try {
+            Run run = new Run();
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).directory(dir.toFile())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            while (!process.waitFor(POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (run.firstFile < 0 && hasClassFile(dir)) {
+                    run.firstFile = (System.nanoTime() - start) / 1e6;
+                }
+            }
+            run.exit = (System.nanoTime() - start) / 1e6;
+            if (run.firstFile < 0 && hasClassFile(dir)) {
+                run.firstFile = run.exit; // written just before exit
+            }
+            if (process.exitValue() != 0) {
+                System.err.println("warning: command exited with " + process.exitValue());
+            }
+            return run;
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static boolean hasClassFile(Path dir) throws IOException {
+        try (var files = Files.newDirectoryStream(dir, "*.j")) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Insert a JVM option right after the java executable
+     */
+    private static List<String> withOption(List<String> command, String option) {
+        List<String> result = new ArrayList<String>(command);
+        result.add(1, option);
+        return result;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+}
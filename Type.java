@@ -0,0 +1,176 @@
+package util;
+
+import java.lang.ref.*;
+import java.util.concurrent.*;
+
+/** A Bantam type: int, boolean, void, an array type or a class type.
+  * Types are canonical: <tt>of()</tt> returns the same object for the same
+  * name, so types compare with <tt>==</tt>, and each one computes its JVM
+  * descriptor once. Class types are interned by name for the whole JVM,
+  * but only weakly: once nothing refers to a type any more (typically
+  * when the compilation whose class it named is over) its entry is
+  * dropped, so a long-running daemon or batch does not keep every class
+  * name it has ever seen. A type recreated later is a new object, which
+  * is safe since nothing can still hold the old one to compare with.
+  * (Class ids belong to a compilation, see <tt>ClassRegistry.getId(Type)</tt>.)
+  * */
+public final class Type {
+    /** What kind of type this is */
+    public enum Kind {
+        PRIMITIVE, VOID, ARRAY, CLASS
+    }
+
+    /** Weak reference to an interned type, remembering its name */
+    private static final class Entry extends WeakReference<Type> {
+        final String name;
+
+        Entry(Type type, ReferenceQueue<Type> queue) {
+            super(type, queue);
+            this.name = type.name;
+        }
+    }
+
+    /** Types by name */
+    private static final ConcurrentMap<String, Entry> TYPES = new ConcurrentHashMap<String, Entry>();
+
+    /** Entries whose type has been collected */
+    private static final ReferenceQueue<Type> STALE = new ReferenceQueue<Type>();
+
+    /** A name recently looked up, with its type */
+    private static final class Recent {
+        final String name;
+        final Type type;
+
+        Recent(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /** Small cache in front of TYPES, by identity of the name: the type
+      * checker asks again and again for the same few String objects (the
+      * names in the AST), and comparing references is much cheaper than
+      * hashing and comparing the strings */
+    private static final Recent[] RECENT = new Recent[256];
+
+    public static final Type INT = intern(new Type("int", Kind.PRIMITIVE, null, "I", "I"));
+    public static final Type BOOLEAN = intern(new Type("boolean", Kind.PRIMITIVE, null, "Z", "Z"));
+    public static final Type VOID = intern(new Type("void", Kind.VOID, null, "V", "V"));
+
+    private final String name;
+    private final Kind kind;
+    /** Element type of an array type, otherwise null */
+    private final Type elementType;
+    private final String descriptor;
+    private final String internalName;
+
+    private Type(String name, Kind kind, Type elementType, String descriptor, String internalName) {
+        this.name = name;
+        this.kind = kind;
+        this.elementType = elementType;
+        this.descriptor = descriptor;
+        this.internalName = internalName;
+    }
+
+    private static Type intern(Type type) {
+        for (Reference<? extends Type> ref; (ref = STALE.poll()) != null;) {
+            TYPES.remove(((Entry) ref).name, ref);
+        }
+        Type[] interned = new Type[1];
+        TYPES.compute(type.name, (name, entry) -> {
+            Type existing = entry == null ? null : entry.get();
+            interned[0] = existing != null ? existing : type;
+            return existing != null ? entry : new Entry(type, STALE);
+        });
+        return interned[0];
+    }
+
+    /** Get the type with a given name
+      * @param name name of the type, e.g. "int", "Foo" or "Foo[]" (may be null)
+      * @return the canonical type, or null if name is null
+      * */
+    public static Type of(String name) {
+        if (name == null) {
+            return null;
+        }
+        int slot = System.identityHashCode(name) & (RECENT.length - 1);
+        Recent recent = RECENT[slot];
+        if (recent != null && recent.name == name) {
+            return recent.type;
+        }
+        Entry entry = TYPES.get(name);
+        Type type = entry == null ? null : entry.get();
+        if (type == null) {
+            type = create(name);
+        }
+        RECENT[slot] = new Recent(name, type);
+        return type;
+    }
+
+    private static Type create(String name) {
+        if (name.endsWith("[]")) {
+            Type element = of(name.substring(0, name.length() - 2));
+            return intern(new Type(name, Kind.ARRAY, element, "[" + element.descriptor,
+                    "[" + element.descriptor));
+        }
+        String internalName;
+        switch (name) {
+            case "Object":
+                internalName = "java/lang/Object";
+                break;
+            case "String":
+                internalName = "java/lang/String";
+                break;
+            default:
+                internalName = name;
+        }
+        return intern(new Type(name, Kind.CLASS, null, "L" + internalName + ";", internalName));
+    }
+
+    /** @return the Bantam name of the type */
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /** @return true for int and boolean */
+    public boolean isPrimitive() {
+        return kind == Kind.PRIMITIVE;
+    }
+
+    public boolean isVoid() {
+        return kind == Kind.VOID;
+    }
+
+    public boolean isArray() {
+        return kind == Kind.ARRAY;
+    }
+
+    /** @return true for class types (whether or not the class exists) */
+    public boolean isClass() {
+        return kind == Kind.CLASS;
+    }
+
+    /** @return the element type of an array type, otherwise null */
+    public Type getElementType() {
+        return elementType;
+    }
+
+    /** @return the JVM descriptor, e.g. "I", "[I" or "Ljava/lang/String;" */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /** @return the JVM internal name of a class or array type, e.g. "java/lang/Object" */
+    public String getInternalName() {
+        return internalName;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
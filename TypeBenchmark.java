@@ -0,0 +1,147 @@
+package codegenjvm;
+
+import java.util.*;
+
+import util.*;
+
+/**
+ * Compares the type operations of the type checker and the code generator
+ * on canonical Type objects with the String-based versions they replaced
+ * (kept here as the baseline). Each operation runs over the same mix of
+ * type names as a typical program's expressions, for a few warm-up rounds
+ * and then the measured rounds.
+ *
+ * <pre>
+ *   java codegenjvm.TypeBenchmark [rounds]
+ * </pre>
+ */
+public class TypeBenchmark {
+    /** Type names as they come from the AST, in a typical mix */
+    private static final String[] NAMES = {
+        "int", "int", "int", "boolean", "boolean", "void", "String", "Object",
+        "Node", "List", "Main", "int[]", "boolean[]", "Node", "String", "int",
+    };
+
+    /** Classes of the program */
+    private static final Set<String> CLASSES =
+            new HashSet<String>(List.of("Object", "String", "TextIO", "Sys", "Node", "List", "Main"));
+
+    /** Operations per round */
+    private static final int OPERATIONS = 1 << 20;
+
+    /** Keeps the results alive */
+    private static long sink;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        // names built at run time, as the parser's are, so identity tricks do not apply
+        String[] names = new String[NAMES.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new String(NAMES[i]);
+        }
+
+        report("type checks", rounds, () -> stringChecks(names), () -> typeChecks(names));
+        report("descriptors", rounds, () -> stringDescriptors(names), () -> typeDescriptors(names));
+    }
+
+    private static void report(String label, int rounds, Runnable baseline, Runnable canonical) {
+        for (int i = 0; i < 5; i++) {
+            baseline.run();
+            canonical.run();
+        }
+        double before = time(baseline, rounds);
+        double after = time(canonical, rounds);
+        System.out.printf("%-12s String %7.2f ns/op, Type %7.2f ns/op, %.1fx%n", label,
+                before, after, before / after);
+    }
+
+    /** @return average time per operation, in ns */
+    private static double time(Runnable round, int rounds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            round.run();
+        }
+        return (double) (System.nanoTime() - start) / rounds / OPERATIONS;
+    }
+
+    // --- the checks TypeCheckVisitor makes for each expression
+
+    private static void stringChecks(String[] names) {
+        long n = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            String a = names[i % names.length];
+            String b = names[(i + 3) % names.length];
+            if (a.equals(b)) {
+                n++;
+            }
+            if (a.equals("int") || a.equals("boolean")) {
+                n++;
+            }
+            if (a.equals("void")) {
+                n++;
+            }
+            if (a.equals("int") || a.equals("boolean") || a.equals("int[]") || a.equals("boolean[]")
+                    || CLASSES.contains(a)) {
+                n++;
+            }
+        }
+        sink += n;
+    }
+
+    private static void typeChecks(String[] names) {
+        long n = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            Type a = Type.of(names[i % names.length]);
+            Type b = Type.of(names[(i + 3) % names.length]);
+            if (a == b) {
+                n++;
+            }
+            if (a.isPrimitive()) {
+                n++;
+            }
+            if (a == Type.VOID) {
+                n++;
+            }
+            if (a.isPrimitive() || (a.isArray() && a.getElementType().isPrimitive())
+                    || (a.isClass() && CLASSES.contains(a.getName()))) {
+                n++;
+            }
+        }
+        sink += n;
+    }
+
+    // --- the descriptor CodeGenVisitor emits for each field, method and call
+
+    private static void stringDescriptors(String[] names) {
+        long n = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            n += stringDescriptor(names[i % names.length]).length();
+        }
+        sink += n;
+    }
+
+    private static String stringDescriptor(String type) {
+        switch (type) {
+            case "Object":
+                return "java/lang/Object";
+            case "String":
+                return "Ljava/lang/String;";
+            case "int":
+                return "I";
+            case "boolean":
+                return "Z";
+            case "void":
+                return "V";
+            default:
+                return type.endsWith("[]") ? String.format("[L%s;", type) : String.format("L%s;", type);
+        }
+    }
+
+    private static void typeDescriptors(String[] names) {
+        long n = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            n += Type.of(names[i % names.length]).getDescriptor().length();
+        }
+        sink += n;
+    }
+}
@@ -5,22 +5,50 @@ import ast.*;
 import util.*;
 
 public class TypeCheckVisitor extends SemanticVisitor {
-    ErrorHandler errorHandler;
-    Hashtable<String, ClassTreeNode> classMap;
+    private static final Type OBJECT = Type.of("Object");
+    DiagnosticSink errorHandler;
+    ClassRegistry classMap;
     private SymbolTable varSymbolTable;
     private SymbolTable methodSymbolTable;
+    /** Class-level tables built by ClassEnvVisitor; only ever read here */
+    private SymbolTable classVarSymbolTable;
+    private SymbolTable classMethodSymbolTable;
     String fileName;
     String className;
     Method currentMethod = null;
     Field currentField = null;
     boolean withinLoop = false;
+    /** Where references to other classes are recorded (may be null) */
+    private DependencyGraph dependencies;
+    /** Classes whose environments could not be built completely */
+    private Set<String> poisoned = Collections.emptySet();
+    /** Flattened method tables of all classes, by class id */
+    private final MethodTable[] methodTables;
+    /** Method table of the class being checked */
+    private MethodTable classMethods;
+    /** Dense field tables of all classes, by class id */
+    private final FieldTable[] fieldTables;
+    /** Field table of the class being checked */
+    private FieldTable classFields;
 
     // String currentMethodName;
 
-    TypeCheckVisitor(ErrorHandler errorHandler,
-            Hashtable<String, ClassTreeNode> classMap) {
+    /**
+     * @param errorHandler where errors are registered
+     * @param classMap     classes of the program
+     * @param methodTables flattened method table of each class, by class id,
+     *                     that dispatches are resolved against
+     * @param fieldTables  field table of each class, by class id, that
+     *                     fields are resolved against
+     * @param dependencies where references to other classes are recorded (may be null)
+     */
+    TypeCheckVisitor(DiagnosticSink errorHandler, ClassRegistry classMap,
+            MethodTable[] methodTables, FieldTable[] fieldTables, DependencyGraph dependencies) {
         this.errorHandler = errorHandler;
         this.classMap = classMap;
+        this.methodTables = methodTables;
+        this.fieldTables = fieldTables;
+        this.dependencies = dependencies;
     }
 
     /**
@@ -30,15 +58,101 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return null (returns value to satisfy compiler)
      */
     public Object visit(Class_ node) {
-        ClassTreeNode ctn = classMap.get(node.getName());
-        varSymbolTable = ctn.getVarSymbolTable();
-        methodSymbolTable = ctn.getMethodSymbolTable();
-        fileName = node.getFilename();
-        className = node.getName();
+        enterClass(classMap.get(node.getName()));
         node.getMemberList().accept(this);
         return null;
     }
 
+    /**
+     * Set the classes whose environments could not be built completely.
+     * A method missing from one of them is probably one that failed to
+     * build, so dispatches to it are not reported again.
+     *
+     * @param poisoned names of the classes
+     */
+    void setPoisoned(Set<String> poisoned) {
+        this.poisoned = poisoned;
+    }
+
+    /**
+     * Type check some of the members of a class. Members do not depend on
+     * each other here, so the members of one class may be split up and
+     * checked by several visitors at the same time.
+     *
+     * @param ctn     class tree node of the class
+     * @param members members of that class to check
+     */
+    void check(ClassTreeNode ctn, List<Member> members) {
+        enterClass(ctn);
+        for (Member member : members) {
+            member.accept(this);
+        }
+    }
+
+    /**
+     * Set up the per-class state of this visitor
+     *
+     * @param ctn class tree node of the class about to be checked
+     */
+    private void enterClass(ClassTreeNode ctn) {
+        classVarSymbolTable = ctn.getVarSymbolTable();
+        classMethodSymbolTable = ctn.getMethodSymbolTable();
+        varSymbolTable = classVarSymbolTable;
+        methodSymbolTable = classMethodSymbolTable;
+        classMethods = methodTables[classMap.getId(ctn.getName())];
+        classFields = fieldTables[classMap.getId(ctn.getName())];
+        fileName = ctn.getASTNode().getFilename();
+        className = ctn.getName();
+        currentMethod = null;
+        currentField = null;
+        withinLoop = false;
+    }
+
+    /**
+     * Record that the class being checked refers to a type
+     *
+     * @param type the type referred to
+     * @param kind how it is referred to
+     */
+    private void dependsOn(String type, DependencyGraph.Kind kind) {
+        if (dependencies != null) {
+            dependencies.add(className, type, kind);
+        }
+    }
+
+    /**
+     * Create a symbol table for the scopes of one method body. It chains
+     * to the class table for lookups, so formals and locals never get
+     * written into the class environment shared with other visitors.
+     *
+     * @param classTable the class-level table
+     * @return new, empty table whose parent is classTable
+     */
+    private SymbolTable localTable(SymbolTable classTable) {
+        SymbolTable table = new SymbolTable();
+        table.setParent(classTable);
+        return table;
+    }
+
+    /**
+     * Get the type of a variable named without a reference: a local
+     * variable, a formal or a field of the class, in that order
+     *
+     * @param name name of the variable
+     * @return its type, or null if there is no such variable
+     */
+    private Object variableType(String name) {
+        var type = methodSymbolTable.peek(name);
+        if (type == null && currentMethod != null) {
+            type = varSymbolTable.peek(name);
+        }
+        if (type == null) {
+            var field = classFields.lookup(name);
+            type = field == null ? null : field.getType().getName();
+        }
+        return type;
+    }
+
     /**
      * visit AST node for fields
      *
@@ -46,6 +160,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return null
      */
     public Object visit(Field node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.TYPE);
         // System.out.println(node.getName());
         currentField = node;
         boolean validField = true;
@@ -57,25 +172,22 @@ public class TypeCheckVisitor extends SemanticVisitor {
                 if (initType.equals("void")) {
                     errorHandler.register(
                             2, fileName, node.getLineNum(),
-                            String.format(
-                                    "expression type 'void' of field '%s' cannot be void",
-                                    node.getName()));
+                            "expression type 'void' of field '%s' cannot be void",
+                            node.getName());
                     validField = false;
                 } else if (!initType.equals(node.getType())
                         && (node.getType().equals("int")
                                 || node.getType().equals("boolean"))) {
                     errorHandler.register(
                             2, fileName, node.getLineNum(),
-                            String.format(
-                                    "expression type '%s' of field '%s' does not match declared type '%s'",
-                                    initType, node.getName(), node.getType()));
+                            "expression type '%s' of field '%s' does not match declared type '%s'",
+                            initType, node.getName(), node.getType());
                     validField = false;
                 } else if (!initType.equals(node.getType())) {
                     errorHandler.register(
                             2, fileName, node.getLineNum(),
-                            String.format(
-                                    "expression type '%s' of field '%s' does not conform to declared type '%s'",
-                                    initType, node.getName(), node.getType()));
+                            "expression type '%s' of field '%s' does not conform to declared type '%s'",
+                            initType, node.getName(), node.getType());
                     validField = false;
                 }
             } else {
@@ -83,18 +195,16 @@ public class TypeCheckVisitor extends SemanticVisitor {
                         || node.getType().equals("boolean")) {
                     errorHandler.register(
                             2, fileName, node.getLineNum(),
-                            String.format(
-                                    "expression type '%s' of field '%s' does not match declared type '%s'",
-                                    initType, node.getName(), node.getType()));
+                            "expression type '%s' of field '%s' does not match declared type '%s'",
+                            initType, node.getName(), node.getType());
                     validField = false;
                 }
                 // else if (node.getType().equals("void")) {
 
                 // }
             }
-            if (validField) {
-                varSymbolTable.add(node.getName(), node.getType());
-            }
+            // valid fields were already added to the class environment by
+            // ClassEnvVisitor, which is read-only from here on
         }
         return null;
     }
@@ -106,13 +216,18 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(Method node) {
+        dependsOn(node.getReturnType(), DependencyGraph.Kind.TYPE);
         // System.out.println(node.getName());
         currentMethod = node;
         // currentMethodName = node.getName();
+        varSymbolTable = localTable(classVarSymbolTable);
+        methodSymbolTable = localTable(classMethodSymbolTable);
         node.getFormalList().accept(this);
         node.getStmtList().accept(this);
         varSymbolTable.exitScope();
         methodSymbolTable.exitScope();
+        varSymbolTable = classVarSymbolTable;
+        methodSymbolTable = classMethodSymbolTable;
         return null;
     }
 
@@ -139,6 +254,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(Formal node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.TYPE);
         // System.out.println(node);
         // boolean validFormal = true;
         switch (node.getName()) {
@@ -171,9 +287,8 @@ public class TypeCheckVisitor extends SemanticVisitor {
             if (!typeExists(node.getType())) {
                 errorHandler.register(
                         2, fileName, node.getLineNum(),
-                        String.format(
-                                "type '%s' of formal '%s' is undefined",
-                                node.getType(), node.getName()));
+                        "type '%s' of formal '%s' is undefined",
+                        node.getType(), node.getName());
                 varSymbolTable.add(node.getName(), "Object");
             } else {
                 varSymbolTable.add(node.getName(), node.getType());
@@ -181,9 +296,8 @@ public class TypeCheckVisitor extends SemanticVisitor {
         } else {
             errorHandler.register(
                     2, fileName, node.getLineNum(),
-                    String.format(
-                            "formal '%s' is multiply defined",
-                            node.getName()));
+                    "formal '%s' is multiply defined",
+                    node.getName());
         }
         return null;
     }
@@ -235,6 +349,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(DeclStmt node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.TYPE);
         // System.out.println(node);
         var returnedType = node.getInit().accept(this);
         // System.out.println(returnedType);
@@ -263,42 +378,40 @@ public class TypeCheckVisitor extends SemanticVisitor {
         if (methodSymbolTable.lookup(node.getName()) != null || varSymbolTable.peek(node.getName()) != null) {
             errorHandler.register(
                     2, fileName, node.getLineNum(),
-                    String.format(
-                            "variable '%s' is already defined in method %s",
-                            node.getName(), currentMethod.getName()));
+                    "variable '%s' is already defined in method %s",
+                    node.getName(), currentMethod.getName());
             validVar = false;
         }
         var type = node.getType();
         if (!typeExists(type)) {
             errorHandler.register(
                     2, fileName, node.getLineNum(),
-                    String.format(
-                            "type '%s' of declaration '%s' is undefined",
-                            node.getType(), node.getName()));
+                    "type '%s' of declaration '%s' is undefined",
+                    node.getType(), node.getName());
             type = "Object";
             // validVar = false;
         }
         // System.out.println(className+" "+type+" "+returnedType+ "
         // "+node.getLineNum()+" "+(!isPrimitive(type) &&
         // !typesCompatible(returnedType.toString(), type)));
-        if (!isPrimitive(type) && !isPrimitive(returnedType.toString())
-                && !typesCompatible(returnedType.toString(), type)) {
+        Type declared = Type.of(type);
+        Type returned = typeOf(returnedType);
+        if (!isPrimitive(declared) && !isPrimitive(returned)
+                && !typesConform(returned, declared)) {
             errorHandler.register(
                     2, fileName, node.getLineNum(),
-                    String.format(
-                            "expression type '%s' of declaration '%s' does not conform"
-                                    + " to declared type '%s'",
-                            returnedType, node.getName(), type));
+                    "expression type '%s' of declaration '%s' does not conform"
+                            + " to declared type '%s'",
+                    returnedType, node.getName(), type);
             // validVar = false;
         } else {
             // System.out.println("Hello");
-            if (!type.equals(returnedType)) {
+            if (declared != returned) {
                 errorHandler.register(
                         2, fileName, node.getLineNum(),
-                        String.format(
-                                "expression type '%s' of declaration '%s' does not match"
-                                        + " declared type '%s'",
-                                returnedType, node.getName(), type));
+                        "expression type '%s' of declaration '%s' does not match"
+                                + " declared type '%s'",
+                        returnedType, node.getName(), type);
                 // validVar = false;
             }
 
@@ -345,7 +458,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var type = node.getPredExpr().accept(this);
         if (!type.equals("boolean")) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("predicate in if-statement does not have type boolean"));
+                    "predicate in if-statement does not have type boolean");
         }
         node.getThenStmt().accept(this);
         node.getElseStmt().accept(this);
@@ -365,7 +478,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
         // System.out.println(node.getLineNum()+" "+type);
         if (!type.equals("boolean")) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("predicate in while-statement does not have type boolean"));
+                    "predicate in while-statement does not have type boolean");
         }
         // System.out.println(node.getBodyStmt());
         node.getBodyStmt().accept(this);
@@ -390,7 +503,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
             node.getPredExpr().accept(this);
             if (node.getPredExpr().getExprType().equals("boolean")) {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("predicate in for-statement does not have type boolean"));
+                        "predicate in for-statement does not have type boolean");
             }
         }
         if (node.getUpdateExpr() != null)
@@ -444,40 +557,38 @@ public class TypeCheckVisitor extends SemanticVisitor {
             
             if (returnedType.equals("void")) {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "cannot return an expression of type 'void' from a method"));
+                            "cannot return an expression of type 'void' from a method");
                 node.getExpr().setExprType("Object");
                 returnedType = "Object";
             }
             //  System.out.println(node.getLineNum()+ " "+returnedType);
-            if (isRefType(declaredType)) {
+            Type declared = Type.of(declaredType);
+            Type returned = typeOf(returnedType);
+            if (isRefType(declared)) {
                 // System.out.println("helloref " + node.getLineNum());
-                if (!typesConform(returnedType.toString(), declaredType)) {
+                if (!typesConform(returned, declared)) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "return type '%s' does not conform to declared return type "
-                                            + "'%s' in method '%s'",
-                                    returnedType, declaredType, currentMethod.getName()));
+                            "return type '%s' does not conform to declared return type "
+                                    + "'%s' in method '%s'",
+                            returnedType, declaredType, currentMethod.getName());
                 }
-            } else if (!typesCompatible(returnedType.toString(), declaredType)) {
+            } else if (!typesCompatible(returned, declared)) {
                 // System.out.println(node.getLineNum() +" "+ returnedType + " " +
                 // declaredType);
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format(
-                                "return type '%s' is not compatible with declared return type "
-                                        + "'%s' in method '%s'",
-                                returnedType, declaredType, currentMethod.getName()));
+                        "return type '%s' is not compatible with declared return type "
+                                + "'%s' in method '%s'",
+                        returnedType, declaredType, currentMethod.getName());
             }
             return returnedType;
         } else {
             returnedType = "void";
             // System.out.println(node.getLineNum()+" "+returnedType);
-            if (typeExists(declaredType) && !typesCompatible(returnedType.toString(), declaredType)) {
+            if (typeExists(declaredType) && !typesCompatible(Type.VOID, Type.of(declaredType))) {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format(
-                                "return type '%s' is not compatible with declared return type "
-                                        + "'%s' in method '%s'",
-                                returnedType, declaredType, currentMethod.getName()));
+                        "return type '%s' is not compatible with declared return type "
+                                + "'%s' in method '%s'",
+                        returnedType, declaredType, currentMethod.getName());
             }
             return returnedType;
         }
@@ -510,127 +621,50 @@ public class TypeCheckVisitor extends SemanticVisitor {
         if (name.equals("this")) {
             // System.out.println(node.getLineNum()+" this");
             // System.out.println(node.getLineNum() + " " + node.getMethodName());
-            var method = methodSymbolTable.lookup(node.getMethodName());
-            if (method != null) {
-                var methodNode = (Method) method;
-                type = methodNode.getReturnType();
-
-                var formalListSize = methodNode.getFormalList().getSize();
-                var actualListSize = node.getActualList().getSize();
-                // System.out.println(node.getLineNum() + " " + formalListSize + " " +
-                // actualListSize);
-
-                if (formalListSize != actualListSize) {
-                    errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "number of actual parameters (%d) differs from number of formal parameters (%d) in dispatch to method '%s'",
-                                    actualListSize,
-                                    formalListSize, node.getMethodName()));
-                }
-
-                String[] formalTypes = new String[actualListSize + 1];
-                int count = 0;
-                for (Iterator it = methodNode.getFormalList().getIterator(); it.hasNext();) {
-                    var formalType = ((Formal) it.next()).getType();
-                    // System.out.println(formalType);
-                    formalTypes[count] = formalType;
-                    count++;
-                }
-                if (isVoid(type)) {
+            var entry = classMethods.lookup(node.getMethodName());
+            if (entry != null) {
+                var method = entry.getSignature();
+                type = method.getReturnType().getName();
+                if (method.getReturnType().isVoid()) {
                     // System.out.println(node.getLineNum());
                     node.setExprType("void");
                 }
-                int counter = 0;
-                for (Iterator it = node.getActualList().getIterator(); it.hasNext();) {
-                    counter++;
-                    var actualtype = ((Expr) it.next()).getExprType();
-                    if (actualtype.equals("void")) {
-                        errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                                "actual parameter %d in the call to method %s is void and cannot be used within an expression",
-                                counter, node.getMethodName()));
-                    } else if (counter <= formalListSize && !actualtype.equals(formalTypes[counter - 1])) {
-                        // System.out.println(node.getLineNum());
-                        errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                                "actual parameter %d with type '%s' does not match formal parameter %d with declared type '%s' in dispatch to method '%s'",
-                                counter, actualtype.toString(), counter, formalTypes[counter - 1],
-                                node.getMethodName()));
-                    }
-
-                }
+                checkActuals(node, method);
 
             } else {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("dispatch to unknown method '%s'", node.getMethodName()));
+                        "dispatch to unknown method '%s'", node.getMethodName());
             }
         } else if (name.equals("super")) {
             // System.out.println(node.getLineNum());
+            var parent = classMap.get(className).getParent();
+            var entry = parent == null ? null
+                    : methodTables[classMap.getId(parent.getName())].lookup(node.getMethodName());
+            if (entry != null) {
+                type = entry.getSignature().getReturnType().getName();
+            }
         } else {
-            if (refExprType != null && (isPrimitive(refExprType.toString()) || isVoid(refExprType.toString()))) {
+            var refType = typeOf(refExprType);
+            if (isPrimitive(refType) || isVoid(refType)) {
                 errorHandler.register(2, fileName, node.getLineNum(), "can't dispatch on a primitive or void type");
                 node.setExprType("Object");
                 // return "Object";
             }
-            if (classMap.get(refExprType) != null) {
-                var classCTN = classMap.get(refExprType);
-                var classMST = classCTN.getMethodSymbolTable();
-                // System.out.println(classMST);
-                var method = classMST.lookup(node.getMethodName());
-                if (method != null) {
-                    var methodNode = (Method) method;
-                    type = methodNode.getReturnType();
-
-                    var formalListSize = methodNode.getFormalList().getSize();
-                    var actualListSize = node.getActualList().getSize();
-                    // System.out.println(node.getLineNum() + " " + formalListSize + " " +
-                    // actualListSize);
-
-                    if (formalListSize != actualListSize) {
-                        errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "number of actual parameters (%d) differs from number of formal parameters (%d) in dispatch to method '%s'",
-                                        actualListSize,
-                                        formalListSize, node.getMethodName()));
-                    }
-
-                    String[] formalTypes = new String[actualListSize + 1];
-                    int count = 0;
-                    for (Iterator it = methodNode.getFormalList().getIterator(); it.hasNext();) {
-                        var formalType = ((Formal) it.next()).getType();
-                        // System.out.println(formalType);
-                        formalTypes[count] = formalType;
-                        count++;
-                    }
-                    if (isVoid(type)) {
+            var classCTN = refExprType instanceof String ? classMap.get((String) refExprType) : null;
+            if (classCTN != null) {
+                dependsOn(classCTN.getName(), DependencyGraph.Kind.DISPATCH);
+                var entry = methodTables[classMap.getId(classCTN.getName())].lookup(node.getMethodName());
+                if (entry != null) {
+                    var method = entry.getSignature();
+                    type = method.getReturnType().getName();
+                    if (method.getReturnType().isVoid()) {
                         node.setExprType("void");
                     }
-                    int counter = 0;
-                    for (Iterator it = node.getActualList().getIterator(); it.hasNext();) {
-                        counter++;
-                        var actualtype = ((Expr) it.next()).getExprType();
-                        if (actualtype.equals("void")) {
-                            errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                                    "actual parameter %d in the call to method %s is void and cannot be used within an expression",
-                                    counter, node.getMethodName()));
-                        } else if (counter <= formalListSize && !actualtype.equals("Object")
-                                && !typesCompatible(actualtype, formalTypes[counter - 1])) {
-                            // System.out.println(node.getLineNum());
-                            errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                                    "actual parameter %d with type '%s' does not match formal parameter %d with declared type '%s' in dispatch to method '%s'",
-                                    counter, actualtype.toString(), counter, formalTypes[counter - 1],
-                                    node.getMethodName()));
-                        } else if (counter <= formalListSize && !typesConform(actualtype, formalTypes[counter - 1])) {
-                            // System.out.println(node.getLineNum());
-                            errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                                    "actual parameter %d with type '%s' does not conform to formal parameter %d with declared type '%s' in dispatch to method '%s'",
-                                    counter, actualtype.toString(), counter, formalTypes[counter - 1],
-                                    node.getMethodName()));
-                        }
+                    checkActuals(node, method);
 
-                    }
-
-                } else {
+                } else if (!poisoned.contains(classCTN.getName())) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format("dispatch to unknown method '%s'", node.getMethodName()));
+                            "dispatch to unknown method '%s'", node.getMethodName());
                 }
             }
 
@@ -643,9 +677,58 @@ public class TypeCheckVisitor extends SemanticVisitor {
         // accessed within the class or subclass via 'this' or 'super'", name));
         // }
 
+        if (type != null) {
+            // code generation resolves calls on the result, e.g. a.b().c(), by this type
+            node.setExprType(type);
+        }
         return type;
     }
 
+    /**
+     * Check the actuals of a dispatch against the formals of the method
+     * called, whatever the receiver
+     * 
+     * @param node   the dispatch expression node (its actuals already visited)
+     * @param method signature of the method called
+     */
+    private void checkActuals(DispatchExpr node, Signature method) {
+        var formalListSize = method.getFormalCount();
+        var actualListSize = node.getActualList().getSize();
+        // System.out.println(node.getLineNum() + " " + formalListSize + " " +
+        // actualListSize);
+
+        if (formalListSize != actualListSize) {
+            errorHandler.register(2, fileName, node.getLineNum(),
+                    "number of actual parameters (%d) differs from number of formal parameters (%d) in dispatch to method '%s'",
+                    actualListSize,
+                    formalListSize, node.getMethodName());
+        }
+
+        int counter = 0;
+        for (Iterator it = node.getActualList().getIterator(); it.hasNext();) {
+            counter++;
+            var actualtype = ((Expr) it.next()).getExprType();
+            var actual = Type.of(actualtype);
+            if (actual == Type.VOID) {
+                errorHandler.register(2, fileName, node.getLineNum(), "actual parameter %d in the call to method %s is void and cannot be used within an expression",
+                        counter, node.getMethodName());
+            } else if (counter <= formalListSize
+                    && (isPrimitive(actual) || isPrimitive(method.getFormalType(counter - 1)))
+                    && !typesCompatible(actual, method.getFormalType(counter - 1))) {
+                // System.out.println(node.getLineNum());
+                errorHandler.register(2, fileName, node.getLineNum(), "actual parameter %d with type '%s' does not match formal parameter %d with declared type '%s' in dispatch to method '%s'",
+                        counter, actualtype.toString(), counter, method.getFormalType(counter - 1),
+                        node.getMethodName());
+            } else if (counter <= formalListSize
+                    && !typesConform(actual, method.getFormalType(counter - 1))) {
+                // System.out.println(node.getLineNum());
+                errorHandler.register(2, fileName, node.getLineNum(), "actual parameter %d with type '%s' does not conform to formal parameter %d with declared type '%s' in dispatch to method '%s'",
+                        counter, actualtype.toString(), counter, method.getFormalType(counter - 1),
+                        node.getMethodName());
+            }
+        }
+    }
+
     /**
      * Visit a new expression node
      * 
@@ -653,16 +736,17 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(NewExpr node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.NEW);
         var type = node.getType();
         if (!typeExists(type)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("type '%s' of new construction is undefined", type));
+                    "type '%s' of new construction is undefined", type);
             node.setExprType("Object");
             return "Object";
         }
-        if (isPrimitive(type)) {
+        if (isPrimitive(Type.of(type))) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("type '%s' of new construction is primitive and cannot be constructed", type));
+                    "type '%s' of new construction is primitive and cannot be constructed", type);
             node.setExprType("Object");
             return "Object";
         }
@@ -670,6 +754,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
         // node.setExprType(type);
         // return type;
         // }
+        node.setExprType(type);
         return type;
     }
 
@@ -680,6 +765,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(NewArrayExpr node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.TYPE);
         node.getSize().accept(this);
         return null;
     }
@@ -691,27 +777,31 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(InstanceofExpr node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.INSTANCEOF);
         var rhsType = node.getType();
         var lhsType = node.getExpr().accept(this);
+        Type lhs = typeOf(lhsType);
+        Type rhs = Type.of(rhsType);
         boolean valid = true;
-        if (lhsType != null && isPrimitive(lhsType.toString())) {
-            errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                    "the instanceof lefthand expression has type 'int', which is primitive and not an object type",
-                    lhsType));
+        if (isPrimitive(lhs)) {
+            errorHandler.register(2, fileName, node.getLineNum(), "the instanceof lefthand expression has type 'int', which is primitive and not an object type",
+                    lhsType);
         }
-        if (isPrimitive(rhsType)) {
+        if (isPrimitive(rhs)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("the instanceof righthand type '%s' is primitive and not an object type", rhsType));
+                    "the instanceof righthand type '%s' is primitive and not an object type", rhsType);
         }
         if (!typeExists(rhsType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("the instanceof righthand type '%s' is undefined", rhsType));
+                    "the instanceof righthand type '%s' is undefined", rhsType);
 
+        } else if (isRefType(lhs) && isRefType(rhs) && !typesConform(lhs, rhs) && !typesConform(rhs, lhs)) {
+            errorHandler.register(2, fileName, node.getLineNum(),
+                    "inconvertible types in instanceof ('%s'=>'%s')", lhsType, rhsType);
         }
-        if (lhsType != null && isVoid(lhsType.toString())) {
-            errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                    "the instanceof lefthand expression has type 'int', which is primitive and not an object type",
-                    lhsType));
+        if (isVoid(lhs)) {
+            errorHandler.register(2, fileName, node.getLineNum(), "the instanceof lefthand expression has type 'int', which is primitive and not an object type",
+                    lhsType);
             valid = false;
         }
 
@@ -729,26 +819,29 @@ public class TypeCheckVisitor extends SemanticVisitor {
      * @return result of the visit
      */
     public Object visit(CastExpr node) {
+        dependsOn(node.getType(), DependencyGraph.Kind.CAST);
         boolean valid = true;
         var exprType = node.getExpr().accept(this);
         // figure out logic for up/downcast
         var targetType = node.getType();
+        Type target = Type.of(targetType);
+        Type expr = typeOf(exprType);
         // System.out.println(node.getLineNum()+" "+targetType);
-        if (isPrimitive(targetType)) {
+        if (isPrimitive(target)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("the target type '%s' is primitive and not an object type", targetType));
+                    "the target type '%s' is primitive and not an object type", targetType);
             targetType = "Object";
-        } else if (!isRefType(targetType)) { // this condition is not strong enough
+        } else if (!isRefType(target)) { // this condition is not strong enough
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("the target type '%s' is undefined", targetType));
+                    "the target type '%s' is undefined", targetType);
             targetType = "Object";
-        } else if (exprType != null && !typesConform(exprType.toString(), targetType)) {
+        } else if (expr != null && !typesConform(expr, target) && !typesConform(target, expr)) {
+            // neither an upcast nor a downcast
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("inconvertible types ('%s'=>'%s')", exprType, targetType));
+                    "inconvertible types ('%s'=>'%s')", exprType, targetType);
         }
-        if (exprType != null && isPrimitive(exprType.toString())) {
-            errorHandler.register(2, fileName, node.getLineNum(), String
-                    .format("expression in cast has type '%s', which is primitive and can't be casted", exprType));
+        if (isPrimitive(expr)) {
+            errorHandler.register(2, fileName, node.getLineNum(), "expression in cast has type '%s', which is primitive and can't be casted", exprType);
             valid = false;
         }
         if (valid) {
@@ -768,81 +861,72 @@ public class TypeCheckVisitor extends SemanticVisitor {
     public Object visit(AssignExpr node) {
         // System.out.println(node);
         var rhsType = node.getExpr().accept(this);
+        Type rhs = typeOf(rhsType);
         var a = node.getRefName();
         var b = node.getName();
         var lhsType = "";
         if (a != null) { // im guessing null if a. is absent
             // System.out.println(node.getLineNum() + "In here");
             if (a.equals("this")) {
-                // System.out.println(node.getLineNum() + " " + varSymbolTable.toString());
-                var type = varSymbolTable.peek(b);
-                if (type != null) {
-                    lhsType = type.toString();
-                    if (rhsType != null && typesCompatible(rhsType.toString(), lhsType)) {
+                var field = classFields.lookup(b);
+                if (field != null) {
+                    lhsType = field.getType().getName();
+                    Type lhs = field.getType();
+                    if (rhs != null && typesCompatible(rhs, lhs)) {
                         node.setExprType(rhsType.toString());
                         return rhsType;
                     }
-                    if (rhsType != null && !isPrimitive(lhsType) && !isPrimitive(rhsType.toString())
-                            && !typesConform(rhsType.toString(), lhsType)) {
+                    if (rhs != null && !isPrimitive(lhs) && !isPrimitive(rhs) && !typesConform(rhs, lhs)) {
                         errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
-                                        rhsType, lhsType));
-                    } else if (rhsType != null && !typesCompatible(rhsType.toString(), lhsType)) {
+                                "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
+                                rhsType, lhsType);
+                    } else if (rhs != null && !typesCompatible(rhs, lhs)) {
                         errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
-                                        lhsType, rhsType));
+                                "the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
+                                lhsType, rhsType);
                     }
                 }
             } else if (a.equals("super")) { // for the super
-                var currentClass = classMap.get(className);
-                var currentClassParent = currentClass.getParent();
-                var superSymbolTable = currentClassParent.getVarSymbolTable();
-                var type = superSymbolTable.peek(b);
-                if (type != null) {
-                    lhsType = type.toString();
-                    if (rhsType != null && typesCompatible(rhsType.toString(), lhsType)) {
+                var currentClassParent = classMap.get(className).getParent();
+                var field = fieldTables[classMap.getId(currentClassParent.getName())].lookup(b);
+                if (field != null) {
+                    lhsType = field.getType().getName();
+                    Type lhs = field.getType();
+                    if (rhs != null && typesCompatible(rhs, lhs)) {
                         node.setExprType(rhsType.toString());
                         return rhsType;
                     }
-                    if (rhsType != null && !isPrimitive(lhsType) && !isPrimitive(rhsType.toString())
-                            && !typesConform(rhsType.toString(), lhsType)) {
+                    if (rhs != null && !isPrimitive(lhs) && !isPrimitive(rhs) && !typesConform(rhs, lhs)) {
                         errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
-                                        rhsType, lhsType));
-                    } else if (rhsType != null && !typesCompatible(rhsType.toString(), lhsType)) {
+                                "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
+                                rhsType, lhsType);
+                    } else if (rhs != null && !typesCompatible(rhs, lhs)) {
                         errorHandler.register(2, fileName, node.getLineNum(),
-                                String.format(
-                                        "the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
-                                        lhsType, rhsType));
+                                "the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
+                                lhsType, rhsType);
                     }
                 }
             } else {
-                errorHandler.register(2, fileName, node.getLineNum(), String.format(
-                        "bad reference '%s': fields are 'protected' and can only be accessed within the class or subclass via 'this' or 'super'",
-                        a));
+                errorHandler.register(2, fileName, node.getLineNum(), "bad reference '%s': fields are 'protected' and can only be accessed within the class or subclass via 'this' or 'super'",
+                        a);
             }
         }
-        // System.out.println(node.getLineNum() + " " + varSymbolTable.toString());
-        var type = methodSymbolTable.peek(b);
+        var type = a == null ? variableType(b) : null;
         if (type != null && rhsType != null) {
             lhsType = type.toString();
-            if (typesCompatible(rhsType.toString(), lhsType)) {
+            Type lhs = Type.of(lhsType);
+            if (typesCompatible(rhs, lhs)) {
                 node.setExprType(rhsType.toString());
                 return rhsType;
             }
-            if (!isPrimitive(lhsType) && !isPrimitive(rhsType.toString())
-                    && !typesConform(rhsType.toString(), lhsType)) {
+            if (!isPrimitive(lhs) && !isPrimitive(rhs) && !typesConform(rhs, lhs)) {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format(
-                                "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
-                                rhsType, lhsType));
-            } else if (!typesCompatible(rhsType.toString(), lhsType)) {
+                        "the righthand type '%s' does not conform to the lefthand type '%s' in assignment",
+                        rhsType, lhsType);
+            } else if (!typesCompatible(rhs, lhs)) {
                 errorHandler.register(2, fileName, node.getLineNum(),
-                        String.format("the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
-                                lhsType, rhsType));
+                        "the lefthand type '%s' and righthand type '%s' are not compatible in assignment",
+                        lhsType, rhsType);
             }
         }
         return null;
@@ -871,13 +955,14 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var lhsType = node.getLeftExpr().accept(this);
         var rhsType = node.getRightExpr().accept(this);
         if (lhsType != null && rhsType != null) {
-            if (isPrimitive(rhsType.toString()) || isPrimitive(lhsType.toString())) {
-                if (!typesCompatible(rhsType.toString(), lhsType.toString())) {
+            Type lhs = typeOf(lhsType);
+            Type rhs = typeOf(rhsType);
+            if (isPrimitive(rhs) || isPrimitive(lhs)) {
+                if (!typesCompatible(rhs, lhs)) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "the lefthand type '%s' in the binary operation ('%s') "
-                                            + "does not match the righthand type '%s'",
-                                    lhsType, node.getOpName(), rhsType));
+                            "the lefthand type '%s' in the binary operation ('%s') "
+                                    + "does not match the righthand type '%s'",
+                            lhsType, node.getOpName(), rhsType);
                 }
             }
         }
@@ -896,13 +981,14 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var lhsType = node.getLeftExpr().accept(this);
         var rhsType = node.getRightExpr().accept(this);
         if (lhsType != null && rhsType != null) {
-            if (isPrimitive(rhsType.toString()) || isPrimitive(lhsType.toString())) {
-                if (!typesCompatible(rhsType.toString(), lhsType.toString())) {
+            Type lhs = typeOf(lhsType);
+            Type rhs = typeOf(rhsType);
+            if (isPrimitive(rhs) || isPrimitive(lhs)) {
+                if (!typesCompatible(rhs, lhs)) {
                     errorHandler.register(2, fileName, node.getLineNum(),
-                            String.format(
-                                    "the lefthand type '%s' in the binary operation ('%s') "
-                                            + "does not match the righthand type '%s'",
-                                    lhsType, node.getOpName(), rhsType));
+                            "the lefthand type '%s' in the binary operation ('%s') "
+                                    + "does not match the righthand type '%s'",
+                            lhsType, node.getOpName(), rhsType);
                 }
             }
         }
@@ -971,17 +1057,15 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var operandType = node.getOperandType();
         if (lhsType != null && !lhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the lefthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            lhsType, node.getOpName(), node.getOpType()));
+                    "the lefthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    lhsType, node.getOpName(), node.getOpType());
         }
         if (rhsType != null && !rhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the righthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            rhsType, node.getOpName(), node.getOpType()));
+                    "the righthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    rhsType, node.getOpName(), node.getOpType());
         }
         var operatorType = node.getOpType();
         node.setExprType(operatorType);
@@ -1001,17 +1085,15 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var operandType = node.getOperandType();
         if (lhsType != null && !lhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the lefthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            lhsType, node.getOpName(), node.getOpType()));
+                    "the lefthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    lhsType, node.getOpName(), node.getOpType());
         }
         if (rhsType != null && !rhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the righthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            rhsType, node.getOpName(), node.getOpType()));
+                    "the righthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    rhsType, node.getOpName(), node.getOpType());
         }
         var operatorType = node.getOpType();
         node.setExprType(operatorType);
@@ -1031,17 +1113,15 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var operandType = node.getOperandType();
         if (lhsType != null && !lhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the lefthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            lhsType, node.getOpName(), node.getOpType()));
+                    "the lefthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    lhsType, node.getOpName(), node.getOpType());
         }
         if (rhsType != null && !rhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the righthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            rhsType, node.getOpName(), node.getOpType()));
+                    "the righthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    rhsType, node.getOpName(), node.getOpType());
         }
         var operatorType = node.getOpType();
         node.setExprType(operatorType);
@@ -1061,17 +1141,15 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var operandType = node.getOperandType();
         if (lhsType != null && !lhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the lefthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            lhsType, node.getOpName(), node.getOpType()));
+                    "the lefthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    lhsType, node.getOpName(), node.getOpType());
         }
         if (rhsType != null && !rhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the righthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            rhsType, node.getOpName(), node.getOpType()));
+                    "the righthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    rhsType, node.getOpName(), node.getOpType());
         }
         var operatorType = node.getOpType();
         node.setExprType(operatorType);
@@ -1091,17 +1169,15 @@ public class TypeCheckVisitor extends SemanticVisitor {
         var operandType = node.getOperandType();
         if (lhsType != null && !lhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the lefthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            lhsType, node.getOpName(), node.getOpType()));
+                    "the lefthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    lhsType, node.getOpName(), node.getOpType());
         }
         if (rhsType != null && !rhsType.equals(operandType)) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the righthand type '%s' in the binary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            rhsType, node.getOpName(), node.getOpType()));
+                    "the righthand type '%s' in the binary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    rhsType, node.getOpName(), node.getOpType());
         }
         var operatorType = node.getOpType();
         node.setExprType(operatorType);
@@ -1156,10 +1232,9 @@ public class TypeCheckVisitor extends SemanticVisitor {
             return exprType;
         } else {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the expression type '%s' in the unary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            exprType, node.getOpName(), node.getOpType()));
+                    "the expression type '%s' in the unary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    exprType, node.getOpName(), node.getOpType());
             return null;
         }
     }
@@ -1177,10 +1252,9 @@ public class TypeCheckVisitor extends SemanticVisitor {
             return exprType;
         } else {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format(
-                            "the expression type '%s' in the unary operation ('%s') is "
-                                    + "incorrect; should have been: %s",
-                            exprType, node.getOpName(), node.getOpType()));
+                    "the expression type '%s' in the unary operation ('%s') is "
+                            + "incorrect; should have been: %s",
+                    exprType, node.getOpName(), node.getOpType());
             return null;
         }
     }
@@ -1221,18 +1295,23 @@ public class TypeCheckVisitor extends SemanticVisitor {
         // System.out.println(varSymbolTable.toString());
         // System.out.println(ref);
         if (ref != null) { // a. is present
-            String exprType = ref.getExprType();
-            // System.out.println(exprType);
-            if (exprType.equals("this")) {
-                Object type = varSymbolTable.peek(varName);
-                // System.out.println(type);
-                if (type != null) {
-                    return type;
-                } else {
-                    return "Object";
-                }
+            String refName = ref instanceof VarExpr ? ((VarExpr) ref).getName() : ref.getExprType();
+            // System.out.println(refName);
+            if ("this".equals(refName)) {
+                var field = classFields.lookup(varName);
+                var type = field != null ? field.getType().getName() : "Object";
+                // code generation reads the field's type from the node, e.g. to call this.f.m()
+                node.setExprType(type);
+                return type;
             } else { // a. is super
-                return null;
+                var parent = classMap.get(className).getParent();
+                var field = parent == null ? null
+                        : fieldTables[classMap.getId(parent.getName())].lookup(varName);
+                if (field == null) {
+                    return null;
+                }
+                node.setExprType(field.getType().getName());
+                return field.getType().getName();
             }
         } else { // a. is not present
             if (varName.equals("this")) {
@@ -1244,8 +1323,7 @@ public class TypeCheckVisitor extends SemanticVisitor {
             } else {
                 // System.out.println("Name: " +node.getName()+" node exprType:
                 // "+node.getExprType());
-                // System.out.println(node.getLineNum() + " " + methodSymbolTable.toString());
-                var type = methodSymbolTable.peek(varName);
+                var type = variableType(varName);
 
                 // System.out.println(node.getName());
                 // System.out.println(type);
@@ -1282,12 +1360,12 @@ public class TypeCheckVisitor extends SemanticVisitor {
 
         if (!refType.endsWith("[]")) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("Cannot index non-array type '%s'", refType));
+                    "Cannot index non-array type '%s'", refType);
             exprType = "Object";
         } else if (!indexType.equals("int")) {
             errorHandler.register(2, fileName, node.getLineNum(),
-                    String.format("Array index must be of type 'int', but found '%s'",
-                            indexType));
+                    "Array index must be of type 'int', but found '%s'",
+                    indexType);
             exprType = "Object";
         } else {
             exprType = refType.substring(0, refType.length() - 2);
@@ -1334,27 +1412,33 @@ public class TypeCheckVisitor extends SemanticVisitor {
     }
 
     /**
-     * Placeholder: Checks if actualType conforms to expectedType according to
-     * language rules.
-     * This method needs to handle:
-     * - Equality (int conforms to int)
-     * - Subclassing (SubClass conforms to SuperClass)
-     * info
+     * Get the canonical type of a type name returned by a visit (may be null)
      */
-    private boolean typesCompatible(String actualType, String expectedType) {
-        // System.out.println("Actual:" + actualType + " expect: " + expectedType);
-        if (actualType.equals(expectedType)) {
-            return true;
-        }
-        return false;
+    private static Type typeOf(Object type) {
+        return type == null ? null : Type.of(type.toString());
     }
 
-    private boolean typesConform(String actualType, String expectedType) {
-        if (typesCompatible(actualType, expectedType)) {
+    /**
+     * Check whether two types are the same
+     */
+    private boolean typesCompatible(Type actualType, Type expectedType) {
+        // types are canonical, so equal types are the same object
+        return actualType == expectedType;
+    }
+
+    /**
+     * Check whether a value of actualType can be used where expectedType is
+     * expected: the types are the same, actualType is a subclass of
+     * expectedType (answered from the class tree numbering, see
+     * ClassRegistry.isSubtype), or the value is null and expectedType is a
+     * class
+     */
+    private boolean typesConform(Type actualType, Type expectedType) {
+        if (classMap.isSubtype(actualType, expectedType)) {
             return true;
         }
 
-        if (expectedType.equals("Object") && (isRefType(actualType) || actualType == null)) {
+        if (expectedType == OBJECT && (isRefType(actualType) || actualType == null)) {
             return true;
         }
 
@@ -1364,42 +1448,32 @@ public class TypeCheckVisitor extends SemanticVisitor {
         return false;
     }
 
-    private boolean isRefType(String type) {
-        if (classMap.get(type) != null)
-            return true;
-        return false;
+    private boolean isRefType(Type type) {
+        return classMap.getId(type) >= 0;
     }
 
-    private boolean isPrimitive(String type) {
-        // System.out.println(type);
-        if (type.equals("int") || type.equals("boolean")) {
-            return true;
-        }
-        return false;
+    private boolean isPrimitive(Type type) {
+        return type != null && type.isPrimitive();
     }
 
-    private boolean isVoid(String type) {
-        if (type.equals("void")) {
-            return true;
-        }
-        return false;
+    private boolean isVoid(Type type) {
+        return type == Type.VOID;
     }
 
     private boolean typeExists(String type) {
-        if (type != null) {
-            if (isPrimitive(type)) {
-                return true;
-            }
-
-            if (type.equals("int[]") || type.equals("boolean[]")) {
-                return true;
-            }
-
-            if (classMap.get(type) != null) {
+        Type t = Type.of(type);
+        if (t == null) {
+            return false;
+        }
+        switch (t.getKind()) {
+            case PRIMITIVE:
                 return true;
-            }
+            case ARRAY:
+                return t.getElementType().isPrimitive();
+            case CLASS:
+                return classMap.contains(type);
+            default:
+                return false;
         }
-        return false;
     }
-
 }
@@ -0,0 +1,255 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import ast.*;
+import semant.*;
+import util.*;
+
+/**
+ * Compiler for --watch mode. It compiles the program once, keeps the
+ * analyzed classes in memory and then waits for the source files to
+ * change. Changes that arrive close together are handled as one rebuild:
+ * the changed files are parsed again, the class environments are rebuilt
+ * (members only), and only the classes in the changed files, plus the
+ * classes affected by any change in a class interface according to the
+ * dependency graph, are type checked and generated again. A .j file is
+ * only rewritten if its contents changed. After a build with errors the
+ * next build is a full one, since errors of classes that were not checked
+ * again would otherwise be lost.
+ */
+public class WatchCompiler {
+    /** How long to wait for more changes after one arrives, in ms */
+    private static final int SETTLE_MS = 200;
+
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Number of threads used by the analysis (1 = sequential) */
+    private int jobs = 1;
+
+    /** Front end used to parse the source files */
+    private ProgramParser parser;
+
+    /** The source files, in command line order */
+    private List<String> files;
+
+    /** Directory the .j files are written to (the working directory by default) */
+    private Path outputDir = Paths.get("");
+
+    /** Current classes of each source file */
+    private Map<String, List<Class_>> classesByFile = new LinkedHashMap<String, List<Class_>>();
+
+    /** Serialized interface of each class as of the last build */
+    private Map<String, byte[]> interfaces = new HashMap<String, byte[]>();
+
+    /** Contents of each class's .j file as of the last build */
+    private Map<String, String> sources = new HashMap<String, String>();
+
+    /** Class dependencies, kept up to date across builds */
+    private DependencyGraph dependencyGraph = new DependencyGraph();
+
+    /** Whether the last build succeeded (otherwise the next one is full) */
+    private boolean clean = false;
+
+    public WatchCompiler(ProgramParser parser, List<String> files, boolean debug, int jobs) {
+        this.parser = parser;
+        this.files = new ArrayList<String>(files);
+        this.debug = debug;
+        this.jobs = Math.max(1, jobs);
+    }
+
+    public void setOutputDirectory(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Build the program, then rebuild it whenever its files change, until
+     * the thread is interrupted
+     *
+     * @throws IOException if the source directories cannot be watched
+     */
+    public void run() throws IOException {
+        build(new HashSet<String>(files));
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Map<Path, String> watched = new HashMap<Path, String>();
+            for (String file : files) {
+                Path path = Paths.get(file).toAbsolutePath().normalize();
+                watched.put(path, file);
+                path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<String> changed = new HashSet<String>();
+                WatchKey key = watcher.take();
+                // collect changes until none has arrived for a while
+                while (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed.addAll(files);
+                        } else {
+                            String file = watched.get(dir.resolve((Path) event.context()));
+                            if (file != null) {
+                                changed.add(file);
+                            }
+                        }
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (!changed.isEmpty()) {
+                    build(changed);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rebuild after some files changed (or on the first build, all of them)
+     *
+     * @param changedFiles files that changed, were created or were deleted
+     * @return true if the program compiled without errors
+     */
+    public boolean build(Set<String> changedFiles) {
+        long start = System.nanoTime();
+        boolean full = !clean;
+        if (full) {
+            changedFiles = new HashSet<String>(files);
+            dependencyGraph = new DependencyGraph();
+        }
+
+        // parse the changed files again
+        Set<String> changedClasses = new HashSet<String>();
+        for (String file : files) {
+            if (!changedFiles.contains(file)) {
+                continue;
+            }
+            for (Class_ clazz : classesByFile.getOrDefault(file, Collections.<Class_>emptyList())) {
+                changedClasses.add(clazz.getName());
+            }
+            List<Class_> classes = new ArrayList<Class_>();
+            if (Files.exists(Paths.get(file))) {
+                Program parsed;
+                try {
+                    parsed = parser.parse(new String[] { file });
+                } catch (Exception e) {
+                    System.err.println(file + ": " + e.getMessage());
+                    clean = false;
+                    return false;
+                }
+                for (Iterator it = parsed.getClassList().getIterator(); it.hasNext();) {
+                    Class_ clazz = (Class_) it.next();
+                    classes.add(clazz);
+                    changedClasses.add(clazz.getName());
+                }
+            }
+            classesByFile.put(file, classes);
+        }
+
+        ClassList classList = new ClassList(0);
+        for (String file : files) {
+            for (Class_ clazz : classesByFile.getOrDefault(file, Collections.<Class_>emptyList())) {
+                classList.addElement(clazz);
+            }
+        }
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(new Program(0, classList), debug, jobs);
+        analyzer.setDependencyGraph(dependencyGraph);
+        if (!analyzer.buildEnvironment()) {
+            return finish(analyzer, start, 0, 0);
+        }
+        ClassRegistry registry = analyzer.getClassRegistry();
+
+        // classes whose interface changed, appeared or disappeared
+        Map<String, byte[]> newInterfaces = new HashMap<String, byte[]>();
+        Set<String> changedInterfaces = new HashSet<String>();
+        for (ClassTreeNode ctn : registry.getClasses()) {
+            if (!ctn.isBuiltIn()) {
+                byte[] iface = interfaceOf(ctn);
+                newInterfaces.put(ctn.getName(), iface);
+                if (!Arrays.equals(iface, interfaces.get(ctn.getName()))) {
+                    changedInterfaces.add(ctn.getName());
+                }
+            }
+        }
+        for (String name : interfaces.keySet()) {
+            if (!newInterfaces.containsKey(name)) {
+                changedInterfaces.add(name);
+                dependencyGraph.removeClass(name);
+            }
+        }
+        interfaces = newInterfaces;
+
+        Set<String> recheck = new TreeSet<String>(changedClasses);
+        recheck.addAll(dependencyGraph.affectedBy(changedInterfaces));
+        recheck.retainAll(newInterfaces.keySet());
+        if (full) {
+            recheck = newInterfaces.keySet();
+        }
+        analyzer.typeCheckClasses(recheck);
+        if (analyzer.getDiagnosticSink().errorsFound()) {
+            return finish(analyzer, start, recheck.size(), 0);
+        }
+
+        // generate the rechecked classes, writing only files that changed
+        int written = 0;
+        CodeGenVisitor codeGenVisitor = new CodeGenVisitor(analyzer);
+        try (ClassFileWriter writer = new ClassFileWriter(outputDir)) {
+            for (String name : recheck) {
+                String source = codeGenVisitor.generateSource(registry.get(name).getASTNode());
+                if (!source.equals(sources.get(name))) {
+                    writer.submit(name, source);
+                    sources.put(name, source);
+                    written++;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            sources.clear(); // rewrite everything next time
+        }
+        for (Iterator<String> it = sources.keySet().iterator(); it.hasNext();) {
+            String name = it.next();
+            if (!newInterfaces.containsKey(name)) {
+                it.remove();
+                try {
+                    Files.deleteIfExists(outputDir.resolve(name + ".j"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return finish(analyzer, start, recheck.size(), written);
+    }
+
+    /**
+     * Report the outcome of a build
+     */
+    private boolean finish(SemanticAnalyzer analyzer, long start, int checked, int written) {
+        analyzer.shutdown();
+        List<DiagnosticSink.Diagnostic> errors = analyzer.getDiagnosticSink().getDiagnostics();
+        for (DiagnosticSink.Diagnostic d : errors) {
+            System.err.println(d.getFilename() == null ? d.getMessage()
+                    : d.getFilename() + ":" + d.getLineNum() + ": " + d.getMessage());
+        }
+        clean = errors.isEmpty();
+        System.err.printf("%s: %d classes checked, %d files written, %.1f ms%n",
+                clean ? "ok" : errors.size() + " errors", checked, written,
+                (System.nanoTime() - start) / 1e6);
+        return clean;
+    }
+
+    private static byte[] interfaceOf(ClassTreeNode ctn) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ClassSummary.of(ctn).writeInterface(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen when writing to memory
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package semant;
+
+import java.util.*;
+
+import ast.*;
+import util.*;
+
+/**
+ * Checks the subtype test of ClassRegistry (pre/post-order numbering of
+ * the class tree) against a walk up the parent links, for every pair of
+ * classes of a few class trees: a deep chain, siblings and cousins under
+ * Object, a random tree, and a class that is not in the tree. Needs only
+ * the compiler's classes, no parser.
+ *
+ * <pre>
+ *   java semant.SubtypeTest
+ * </pre>
+ */
+public class SubtypeTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        // Object <- C0 <- C1 <- ... <- C59, with D0 <- D1 a second branch under C30
+        Tree chain = new Tree();
+        chain.add("C0", "Object");
+        for (int i = 1; i < 60; i++) {
+            chain.add("C" + i, "C" + (i - 1));
+        }
+        chain.add("D0", "C30");
+        chain.add("D1", "D0");
+        chain.check("deep chain");
+        expect(chain.registry().isSubtype(Type.of("C59"), Type.of("C0")), "C59 <: C0");
+        expect(chain.registry().isSubtype(Type.of("D1"), Type.of("C30")), "D1 <: C30");
+        expect(!chain.registry().isSubtype(Type.of("D1"), Type.of("C31")), "D1 not <: C31");
+        expect(!chain.registry().isSubtype(Type.of("C0"), Type.of("C59")), "C0 not <: C59");
+
+        // siblings and cousins
+        Tree siblings = new Tree();
+        siblings.add("Shape", "Object");
+        siblings.add("Square", "Shape");
+        siblings.add("Circle", "Shape");
+        siblings.add("Unit", "Square");
+        siblings.add("Other", "Object");
+        siblings.check("siblings");
+        expect(!siblings.registry().isSubtype(Type.of("Square"), Type.of("Circle")), "Square not <: Circle");
+        expect(!siblings.registry().isSubtype(Type.of("Unit"), Type.of("Circle")), "Unit not <: Circle");
+        expect(siblings.registry().isSubtype(Type.of("Unit"), Type.of("Object")), "Unit <: Object");
+        expect(!siblings.registry().isSubtype(Type.of("Object"), Type.of("Shape")), "Object not <: Shape");
+
+        // a random tree, and a class left out of the tree (as in an erroneous program)
+        Random random = new Random(42);
+        Tree tree = new Tree();
+        for (int i = 0; i < 200; i++) {
+            tree.add("R" + i, i == 0 ? "Object" : "R" + random.nextInt(i));
+        }
+        tree.addDetached("Lost");
+        tree.check("random tree");
+        expect(!tree.registry().isSubtype(Type.of("Lost"), Type.of("Object")), "Lost not <: Object");
+        expect(tree.registry().isSubtype(Type.of("Lost"), Type.of("Lost")), "Lost <: Lost");
+
+        // deep enough to overflow the stack if the numbering recursed
+        Tree deep = new Tree();
+        deep.add("E0", "Object");
+        for (int i = 1; i < 100000; i++) {
+            deep.add("E" + i, "E" + (i - 1));
+        }
+        expect(deep.registry().isSubtype(Type.of("E99999"), Type.of("E0")), "E99999 <: E0");
+        expect(!deep.registry().isSubtype(Type.of("E0"), Type.of("E99999")), "E0 not <: E99999");
+
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+        System.out.println("ok   subtype checks");
+    }
+
+    private static void expect(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("FAIL " + what);
+            failures++;
+        }
+    }
+
+    /** A class tree under Object, built the way SemanticAnalyzer builds it */
+    private static class Tree {
+        Hashtable<String, ClassTreeNode> classMap = new Hashtable<String, ClassTreeNode>();
+        List<ClassTreeNode> inTree = new ArrayList<ClassTreeNode>();
+        ClassRegistry registry;
+
+        Tree() {
+            ClassTreeNode object = BuiltinClasses.newNode("Object", classMap);
+            classMap.put("Object", object);
+            inTree.add(object);
+        }
+
+        void add(String name, String parent) {
+            ClassTreeNode ctn = addDetached(name);
+            ctn.setParent(classMap.get(parent));
+            inTree.add(ctn);
+        }
+
+        ClassTreeNode addDetached(String name) {
+            Class_ clazz = new Class_(-1, "test.btm", name, null, new MemberList(-1));
+            ClassTreeNode ctn = new ClassTreeNode(clazz, false, true, classMap);
+            classMap.put(name, ctn);
+            registry = null;
+            return ctn;
+        }
+
+        ClassRegistry registry() {
+            if (registry == null) {
+                // parents were added before their children, which is all freeze needs of the order
+                registry = ClassRegistry.freeze(classMap, inTree);
+            }
+            return registry;
+        }
+
+        /** Compare the registry with a walk up the parent links for every pair */
+        void check(String label) {
+            ClassRegistry registry = registry();
+            for (ClassTreeNode sub : classMap.values()) {
+                for (ClassTreeNode sup : classMap.values()) {
+                    boolean expected = sub == sup;
+                    if (inTree.contains(sub) && inTree.contains(sup)) {
+                        for (ClassTreeNode c = sub; c != null && !expected; c = c.getParent()) {
+                            expected = c == sup;
+                        }
+                    }
+                    if (registry.isSubtype(Type.of(sub.getName()), Type.of(sup.getName())) != expected) {
+                        expect(false, label + ": " + sub.getName() + " <: " + sup.getName()
+                                + " should be " + expected);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+#!/bin/sh
+# Tests of the compiler. SubtypeTest.java checks the class tree numbering
+# directly; the programs are compiled through ../bantamc:
+#
+#   accept/*.btm  must compile; each "// expect-code: File.j text" line
+#                 names a generated file that must contain the text
+#   reject/*.btm  must fail with the message of its "// expect:" line
+#
+# A deep class hierarchy, a class with thousands of fields and a program
+# with many classes are generated on the fly. Every program that compiles is also compiled with --jobs 4 and
+# must give byte-identical files.
+#
+#   BANTAM_CLASSPATH  class path of the compiler (required, see bantamc)
+
+: "${BANTAM_CLASSPATH:?set BANTAM_CLASSPATH to the compiler class path}"
+tests=$(cd "$(dirname "$0")" && pwd)
+bantamc=$tests/../bantamc
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+failures=0
+
+fail() {
+    echo "FAIL $1: $2"
+    failures=$((failures + 1))
+}
+
+# compile a program in a fresh output directory: compile prog.btm dir [option...]
+compile() {
+    prog=$1
+    dir=$2
+    shift 2
+    mkdir -p "$dir"
+    (cd "$dir" && "$bantamc" "$@" "$prog") > "$dir.log" 2>&1
+}
+
+accept() {
+    prog=$1
+    name=$(basename "$prog" .btm)
+    if ! compile "$prog" "$work/$name/seq"; then
+        fail "$name" "rejected: $(head -n 3 "$work/$name/seq.log")"
+        return
+    fi
+    sed -n 's|^// expect-code: ||p' "$prog" > "$work/$name/expect"
+    missing=
+    while read -r file text; do
+        if ! grep -qF -- "$text" "$work/$name/seq/$file" 2> /dev/null; then
+            missing="$missing '$text' in $file;"
+        fi
+    done < "$work/$name/expect"
+    if [ -n "$missing" ]; then
+        fail "$name" "missing$missing"
+    elif ! compile "$prog" "$work/$name/par" --jobs 4; then
+        fail "$name" "rejected with --jobs 4"
+    elif ! diff -r "$work/$name/seq" "$work/$name/par" > /dev/null; then
+        fail "$name" "--jobs 4 output differs from sequential output"
+    else
+        echo "ok   $name"
+    fi
+}
+
+reject() {
+    prog=$1
+    name=$(basename "$prog" .btm)
+    expected=$(sed -n 's|^// expect: ||p' "$prog")
+    if compile "$prog" "$work/$name/seq"; then
+        fail "$name" "accepted"
+    elif ! grep -qF -- "$expected" "$work/$name/seq.log"; then
+        fail "$name" "expected '$expected', got: $(head -n 3 "$work/$name/seq.log")"
+    else
+        echo "ok   $name"
+    fi
+}
+
+# a chain of classes C0 <- C1 <- ... <- C(n-1), with a second branch
+# D0 <- ... <- D9 under C(n/2), checked from both ends: deep n declaration
+deep() {
+    echo "class Main {"
+    echo "    void main() {"
+    echo "        C$(($1 - 1)) leaf = new C$(($1 - 1))();"
+    echo "        C0 root = leaf;"
+    echo "        Object o = (C$(($1 / 2)))(root);"
+    echo "        boolean b = root instanceof C$(($1 - 1));"
+    echo "        C$(($1 / 2)) branch = new D9();"
+    echo "        $2"
+    echo "    }"
+    echo "}"
+    echo "class C0 {"
+    echo "    int depth() {"
+    echo "        return 0;"
+    echo "    }"
+    echo "}"
+    i=1
+    while [ $i -lt "$1" ]; do
+        echo "class C$i extends C$((i - 1)) {"
+        echo "    int depth() {"
+        echo "        return $i;"
+        echo "    }"
+        echo "}"
+        i=$((i + 1))
+    done
+    echo "class D0 extends C$(($1 / 2)) {"
+    echo "}"
+    i=1
+    while [ $i -lt 10 ]; do
+        echo "class D$i extends D$((i - 1)) {"
+        echo "}"
+        i=$((i + 1))
+    done
+}
+
+# one class with n int fields, more than the old cap of 1500: fields n
+fields() {
+    echo "class Main {"
+    echo "    void main() {"
+    echo "        Record r = new Record();"
+    echo "        int last = r.last();"
+    echo "    }"
+    echo "}"
+    echo "class Base {"
+    echo "    int inherited = 0;"
+    echo "}"
+    echo "class Record extends Base {"
+    i=0
+    while [ $i -lt "$1" ]; do
+        echo "    int f$i = $i;"
+        i=$((i + 1))
+    done
+    echo "    int last() {"
+    echo "        this.f$(($1 - 1)) = f0 + inherited;"
+    echo "        super.inherited = f$(($1 / 2));"
+    echo "        return f$(($1 - 1));"
+    echo "    }"
+    echo "}"
+}
+
+# n independent classes of different sizes: wide n
+wide() {
+    echo "class Main {"
+    echo "    void main() {"
+    echo "        int total = 0;"
+    i=0
+    while [ $i -lt "$1" ]; do
+        echo "        total = total + new K$i().run(total);"
+        i=$((i + 1))
+    done
+    echo "    }"
+    echo "}"
+    i=0
+    while [ $i -lt "$1" ]; do
+        echo "class K$i {"
+        echo "    int v = $i;"
+        echo "    int run(int n) {"
+        j=0
+        while [ $j -lt $((i % 7)) ]; do
+            echo "        n = n + v * $j;"
+            j=$((j + 1))
+        done
+        echo "        return n;"
+        echo "    }"
+        echo "}"
+        i=$((i + 1))
+    done
+}
+
+mkdir -p "$work/unit"
+if ! javac -nowarn -cp "$BANTAM_CLASSPATH" -d "$work/unit" "$tests/SubtypeTest.java" > "$work/unit.log" 2>&1; then
+    fail SubtypeTest "does not compile: $(head -n 3 "$work/unit.log")"
+elif ! java -cp "$BANTAM_CLASSPATH:$work/unit" semant.SubtypeTest; then
+    failures=$((failures + 1))
+fi
+
+mkdir -p "$work/gen"
+deep 60 "" > "$work/gen/deep_hierarchy.btm"
+{
+    echo "// expect: expression type 'C0' of declaration 'bad' does not conform to declared type 'C59'"
+    deep 60 "C59 bad = root;"
+} > "$work/gen/deep_hierarchy_downcast.btm"
+{
+    echo "// expect: expression type 'C59' of declaration 'bad' does not conform to declared type 'D9'"
+    deep 60 "D9 bad = leaf;"
+} > "$work/gen/deep_hierarchy_branch.btm"
+fields 3000 > "$work/gen/many_fields.btm"
+wide 300 > "$work/gen/many_classes.btm"
+
+for prog in "$tests"/accept/*.btm "$work/gen/deep_hierarchy.btm" \
+        "$work/gen/many_fields.btm" "$work/gen/many_classes.btm"; do
+    accept "$prog"
+done
+for prog in "$tests"/reject/*.btm "$work/gen/deep_hierarchy_downcast.btm" \
+        "$work/gen/deep_hierarchy_branch.btm"; do
+    reject "$prog"
+done
+
+if [ "$failures" -ne 0 ]; then
+    echo "$failures failures"
+    exit 1
+fi
+echo "all tests passed"